@@ -0,0 +1,52 @@
+package com.github.rainmanwy.robotframework.sikulilib.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.robotframework.javalib.library.AnnotationLibrary;
+
+/**
+ * Overhead of AnnotationLibrary.runKeyword, measured with keywords which do nothing,
+ * so SikuliLibrary keyword classes (which need a display) are not loaded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+
+    private AnnotationLibrary library;
+    private List<Object> noArguments;
+    private List<Object> arguments;
+
+    @Setup
+    public void setUp() {
+        library = new AnnotationLibrary("com/github/rainmanwy/robotframework/sikulilib/benchmark/keywords/*.class");
+        noArguments = new ArrayList<Object>();
+        arguments = new ArrayList<Object>(Arrays.asList("image.png", "10", "20"));
+    }
+
+    @Benchmark
+    public Object runKeywordWithoutArguments() {
+        return library.runKeyword("Noop", noArguments);
+    }
+
+    @Benchmark
+    public Object runKeywordWithArguments() {
+        return library.runKeyword("Noop With Arguments", arguments);
+    }
+}
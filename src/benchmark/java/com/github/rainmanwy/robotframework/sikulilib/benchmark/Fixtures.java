@@ -0,0 +1,52 @@
+package com.github.rainmanwy.robotframework.sikulilib.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Checked in screenshots used by benchmarks, so benchmarks could run without display.
+ */
+public class Fixtures {
+
+    public static final String SCREEN = "screen_1920x1080.png";
+
+    private Fixtures() {}
+
+    public static BufferedImage load(String name) throws IOException {
+        InputStream in = open(name);
+        try {
+            return ImageIO.read(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Copy fixture to a temporary file, for code which resolves images from file system.
+     */
+    public static File copyToFile(String name) throws IOException {
+        File file = File.createTempFile("sikuli-benchmark-", "-" + name);
+        file.deleteOnExit();
+        InputStream in = open(name);
+        try {
+            Files.copy(in, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            in.close();
+        }
+        return file;
+    }
+
+    private static InputStream open(String name) throws IOException {
+        InputStream in = Fixtures.class.getResourceAsStream("/fixtures/" + name);
+        if (in == null) {
+            throw new IOException("Fixture " + name + " does not exist");
+        }
+        return in;
+    }
+}
@@ -0,0 +1,63 @@
+package com.github.rainmanwy.robotframework.sikulilib.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sikuli.script.Finder;
+import org.sikuli.script.Match;
+import org.sikuli.script.Pattern;
+
+/**
+ * Template matching cost for different roi and template sizes, roi is cut from the right bottom of the fixture screen.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MatchBenchmark {
+
+    @Param({"640x480", "1280x720", "1920x1080"})
+    public String roi;
+
+    @Param({"template_24x24.png", "template_100x32.png", "template_200x120.png"})
+    public String template;
+
+    private BufferedImage frame;
+    private Pattern pattern;
+
+    @Setup
+    public void setUp() throws IOException {
+        BufferedImage screen = Fixtures.load(Fixtures.SCREEN);
+        int width = Integer.parseInt(roi.split("x")[0]);
+        int height = Integer.parseInt(roi.split("x")[1]);
+        // copy like a screen capture, Finder reads the data buffer as is and would see the whole screen through a sub image
+        frame = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        frame.getGraphics().drawImage(screen.getSubimage(screen.getWidth() - width, screen.getHeight() - height, width, height), 0, 0, null);
+        pattern = new Pattern(Fixtures.load(template)).similar(0.9f);
+    }
+
+    @Benchmark
+    public Match find() {
+        Finder finder = new Finder(frame);
+        try {
+            finder.find(pattern);
+            return finder.hasNext() ? finder.next() : null;
+        } finally {
+            finder.destroy();
+        }
+    }
+}
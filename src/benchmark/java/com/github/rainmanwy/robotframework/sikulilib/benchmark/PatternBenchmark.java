@@ -0,0 +1,58 @@
+package com.github.rainmanwy.robotframework.sikulilib.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sikuli.script.Pattern;
+
+import com.github.rainmanwy.robotframework.sikulilib.utils.PatternCache;
+
+/**
+ * Cost of turning a locator like "image.png = 0.9" into a pattern, as done by ScreenKeywords.getPattern.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PatternBenchmark {
+
+    private String locator;
+    private String locatorWithSimilarity;
+
+    @Setup
+    public void setUp() throws IOException {
+        File template = Fixtures.copyToFile("template_100x32.png");
+        locator = template.getAbsolutePath();
+        locatorWithSimilarity = locator + " = 0.9";
+    }
+
+    @Benchmark
+    public Pattern getPattern() {
+        return PatternCache.getInstance().getPattern(locator);
+    }
+
+    @Benchmark
+    public Pattern getPatternWithSimilarity() {
+        return PatternCache.getInstance().getPattern(locatorWithSimilarity);
+    }
+
+    @Benchmark
+    public Pattern getPatternUncached() {
+        Pattern pattern = new Pattern(locator).similar(0.9f);
+        pattern.getBImage();
+        return pattern;
+    }
+}
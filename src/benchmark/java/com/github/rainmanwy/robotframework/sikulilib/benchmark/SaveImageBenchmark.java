@@ -0,0 +1,45 @@
+package com.github.rainmanwy.robotframework.sikulilib.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * PNG encoding of a full screen capture, which is what saveImage pays for every captured image.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SaveImageBenchmark {
+
+    private BufferedImage frame;
+
+    @Setup
+    public void setUp() throws IOException {
+        frame = Fixtures.load(Fixtures.SCREEN);
+    }
+
+    @Benchmark
+    public int encodePng() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(1024 * 1024);
+        ImageIO.write(frame, "png", out);
+        return out.size();
+    }
+}
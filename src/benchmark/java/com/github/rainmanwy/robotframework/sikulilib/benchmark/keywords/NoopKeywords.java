@@ -0,0 +1,23 @@
+package com.github.rainmanwy.robotframework.sikulilib.benchmark.keywords;
+
+import org.robotframework.javalib.annotation.ArgumentNames;
+import org.robotframework.javalib.annotation.RobotKeyword;
+import org.robotframework.javalib.annotation.RobotKeywords;
+
+/**
+ * Keywords for DispatchBenchmark, signatures are similar to ScreenKeywords.click
+ */
+@RobotKeywords
+public class NoopKeywords {
+
+    @RobotKeyword("Noop")
+    @ArgumentNames({})
+    public void noop() {
+    }
+
+    @RobotKeyword("Noop with arguments")
+    @ArgumentNames({"image", "xOffset", "yOffset"})
+    public int[] noopWithArguments(String image, int xOffset, int yOffset) {
+        return new int[] {xOffset, yOffset, 0, 0};
+    }
+}
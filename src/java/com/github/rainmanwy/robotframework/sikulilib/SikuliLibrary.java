@@ -4,9 +4,26 @@ import org.robotframework.javalib.library.RobotFrameworkDynamicAPI;
 import org.robotframework.javalib.library.KeywordDocumentationRepository;
 import org.robotframework.javalib.library.AnnotationLibrary;
 import org.robotframework.remoteserver.RemoteServer;
+import org.sikuli.basics.Settings;
+import org.sikuli.script.Screen;
 
+import com.github.rainmanwy.robotframework.sikulilib.utils.BinaryTransport;
 import com.github.rainmanwy.robotframework.sikulilib.utils.CaptureFolder;
+import com.github.rainmanwy.robotframework.sikulilib.utils.CaptureStore;
+import com.github.rainmanwy.robotframework.sikulilib.utils.CaptureWriter;
+import com.github.rainmanwy.robotframework.sikulilib.utils.OcrEnginePool;
+import com.github.rainmanwy.robotframework.sikulilib.utils.PerformanceStatistics;
+import com.github.rainmanwy.robotframework.sikulilib.utils.SessionContext;
+import com.github.rainmanwy.robotframework.sikulilib.utils.SettingsSnapshot;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -15,7 +32,39 @@ import java.util.Map;
  */
 public class SikuliLibrary implements KeywordDocumentationRepository, RobotFrameworkDynamicAPI {
 
+    public static final String READY_MESSAGE = "SIKULI_LIBRARY_READY";
+    public static final String SESSION_PATH = "/session/";
+    private static final String BATCH_KEYWORD = "runKeywordBatch";
+    private static final String BATCH_DOCUMENTATION = "Run keyword batch"
+            + "\n\n Execute several keywords in one remote call, which saves a round trip per keyword."
+            + "\n Every step is a list of keyword name and arguments, steps are executed in order."
+            + "\n Execution stops at the first failed step, which is the last result and has status FAIL and its error."
+            + "\n Return a list of step results, every result contains keyword, status (PASS or FAIL), return value"
+            + " and time (seconds), so check the status of the last result."
+            + "\n\n Examples:"
+            + "\n | @{step1}= | Create List | Click | login.png |"
+            + "\n | @{step2}= | Create List | Input Text | ${EMPTY} | admin |"
+            + "\n | @{step3}= | Create List | Press Special Key | ENTER |"
+            + "\n | ${results}= | Run Keyword Batch | ${step1} | ${step2} | ${step3} |"
+            + "\n | Should Be Equal | ${results}[-1][status] | PASS |";
+
+    private static RemoteServer server = null;
+    private static final Map<String, SessionContext> sessions = new HashMap<String, SessionContext>();
+    private static int sessionCount = 0;
+
     private final AnnotationLibrary annotationLibrary = new AnnotationLibrary("com/github/rainmanwy/robotframework/sikulilib/keywords/**/*.class");
+    private final SessionContext session;
+
+    public SikuliLibrary() {
+        this(null);
+    }
+
+    /**
+     * Library which runs keywords in session, null is the default session.
+     */
+    public SikuliLibrary(SessionContext session) {
+        this.session = session;
+    }
 
     public static void main(String[] args) throws Exception {
         if (args.length == 0) {
@@ -24,37 +73,230 @@ public class SikuliLibrary implements KeywordDocumentationRepository, RobotFrame
         if (args.length >= 2) {
             CaptureFolder.getInstance().setCaptureFolder(args[1]);
         }
+        // prepare an OCR engine for the default language, so the first text read does not wait for it
+        OcrEnginePool.getInstance().prewarm(Settings.OcrLanguage, 1);
         RemoteServer.configureLogging();
-        RemoteServer server = new RemoteServer(Integer.parseInt(args[0]));
-        server.putLibrary("/", new SikuliLibrary());
+        server = new RemoteServer(Integer.parseInt(args[0]));
+        SikuliLibrary library = new SikuliLibrary();
+        // load keywords before announcing readiness, so the first call does not wait for class scanning
+        library.getKeywordNames();
+        server.putLibrary("/", library);
+        BinaryTransport.getInstance().putLibrary("/", library);
         server.start();
+        announceReady(server.getLocalPort(), args.length >= 3 ? args[2] : null);
+    }
+
+    /**
+     * Tell the starter that the server is listening: a line on stdout,
+     * and a line on the callback socket of the starter if its port is given.
+     */
+    private static void announceReady(int port, String callbackPort) {
+        String line = READY_MESSAGE + " " + port;
+        System.out.println(line);
+        System.out.flush();
+        if (callbackPort == null || callbackPort.trim().isEmpty()) {
+            return;
+        }
+        Socket socket = null;
+        try {
+            socket = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(callbackPort.trim()));
+            OutputStream output = socket.getOutputStream();
+            output.write((line + "\n").getBytes("UTF-8"));
+            output.flush();
+        } catch (IOException e) {
+            System.out.println("*WARN* Announce readiness on port " + callbackPort + " failed: " + e.getMessage());
+        } finally {
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // nothing to do, readiness is announced already
+                }
+            }
+        }
     }
 
     @Override
     public Object runKeyword(String keywordName, List args)
     {
-        return this.annotationLibrary.runKeyword(keywordName, args);
+        return runInSession(keywordName, args, null);
     }
 
     @Override
     public Object runKeyword(String keywordName, List args, Map kwargs)
     {
-        return this.annotationLibrary.runKeyword(keywordName, args, kwargs);
+        return runInSession(keywordName, args, kwargs);
+    }
+
+    /**
+     * Run keyword in the session of this library, kwargs is null if the client did not send any.
+     */
+    private Object runInSession(String keywordName, List args, Map kwargs)
+    {
+        if (isBatchKeyword(keywordName)) {
+            return runKeywordBatch(args);
+        }
+        checkSession();
+        SessionContext context = session != null ? session : SessionContext.getDefault();
+        SessionContext previous = SessionContext.enter(context);
+        SettingsSnapshot previousSettings = SettingsSnapshot.enter(context.getSettings());
+        List<File> outerCaptures = CaptureStore.beginKeyword();
+        boolean failed = true;
+        long start = PerformanceStatistics.start();
+        try {
+            Object result = kwargs != null ? this.annotationLibrary.runKeyword(keywordName, args, kwargs)
+                    : this.annotationLibrary.runKeyword(keywordName, args);
+            failed = false;
+            return result;
+        } finally {
+            PerformanceStatistics.getInstance().recordKeyword(keywordName, start);
+            CaptureStore.endKeyword(outerCaptures, failed);
+            SettingsSnapshot.leave(previousSettings);
+            SessionContext.leave(previous);
+        }
     }
 
     @Override
     public List<String> getKeywordNames()
     {
-        return  this.annotationLibrary.getKeywordNames();
+        List<String> names = new ArrayList<String>(this.annotationLibrary.getKeywordNames());
+        names.add(BATCH_KEYWORD);
+        return names;
     }
 
     @Override
     public String getKeywordDocumentation(String name) {
+        if (isBatchKeyword(name)) {
+            return BATCH_DOCUMENTATION;
+        }
         return this.annotationLibrary.getKeywordDocumentation(name);
     }
 
     @Override
     public List<String> getKeywordArguments(String name) {
+        if (isBatchKeyword(name)) {
+            return Arrays.asList("*steps");
+        }
         return this.annotationLibrary.getKeywordArguments(name);
     }
+
+    private void checkSession() {
+        if (session != null && session.isClosed()) {
+            throw new IllegalStateException("Session " + session.getId() + " is closed");
+        }
+    }
+
+    /**
+     * Open a session with its own screen state, served by a new library at the returned path.
+     * Captures of the session are stored below outputFolder, screenId -1 is the primary screen.
+     */
+    public static String openSession(String outputFolder, int screenId) {
+        RemoteServer current = server;
+        if (current == null) {
+            throw new IllegalStateException("Sessions are only available when library runs as remote server");
+        }
+        CaptureFolder captureFolder = new CaptureFolder();
+        if (outputFolder != null && !outputFolder.trim().isEmpty()) {
+            captureFolder.setCaptureFolder(outputFolder);
+        }
+        Screen screen = screenId < 0 ? new Screen() : new Screen(screenId);
+        String id;
+        SessionContext context;
+        synchronized (sessions) {
+            id = Integer.toString(++sessionCount);
+            context = new SessionContext(id, screen, captureFolder);
+            sessions.put(id, context);
+        }
+        SikuliLibrary library = new SikuliLibrary(context);
+        current.putLibrary(SESSION_PATH + id, library);
+        BinaryTransport.getInstance().putLibrary(SESSION_PATH + id, library);
+        System.out.println("*INFO* Opened session " + id + " on screen " + screen.getID());
+        return SESSION_PATH + id;
+    }
+
+    /**
+     * Close session with id (or its path), later keywords of the session fail.
+     * The default session (library served at "/") lives as long as the server and can not be closed.
+     */
+    public static void closeSession(String id) {
+        id = id.trim();
+        if (id.startsWith(SESSION_PATH)) {
+            id = id.substring(SESSION_PATH.length());
+        }
+        if (id.equals(SessionContext.DEFAULT_ID) || id.isEmpty() || id.equals("/")) {
+            throw new IllegalArgumentException("Default session can not be closed, only sessions opened by Open Session");
+        }
+        SessionContext context;
+        synchronized (sessions) {
+            context = sessions.remove(id);
+        }
+        if (context == null) {
+            throw new IllegalArgumentException("No open session " + id);
+        }
+        context.close();
+        try {
+            CaptureWriter.getInstance().flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        RemoteServer current = server;
+        if (current != null) {
+            current.removeLibrary(SESSION_PATH + id);
+        }
+        BinaryTransport.getInstance().removeLibrary(SESSION_PATH + id);
+        System.out.println("*INFO* Closed session " + id);
+    }
+
+    public static List<String> getSessionIds() {
+        synchronized (sessions) {
+            return new ArrayList<String>(sessions.keySet());
+        }
+    }
+
+    private static boolean isBatchKeyword(String name) {
+        return name != null && name.replace(" ", "").replace("_", "").equalsIgnoreCase(BATCH_KEYWORD);
+    }
+
+    /**
+     * Run steps in one remote call, every step is a list of keyword name and arguments.
+     * Stop on the first failed step, which is returned as the last result with status FAIL.
+     */
+    private List<Map<String, Object>> runKeywordBatch(List<?> steps) {
+        List<Map<String, Object>> results = new ArrayList<Map<String, Object>>();
+        for (int i = 0; i < steps.size(); i++) {
+            List<Object> step = toList(steps.get(i));
+            if (step.isEmpty()) {
+                throw new IllegalArgumentException("Step " + (i + 1) + " of batch is empty");
+            }
+            String name = step.get(0).toString();
+            List<Object> arguments = new ArrayList<Object>(step.subList(1, step.size()));
+            Map<String, Object> result = new HashMap<String, Object>();
+            result.put("keyword", name);
+            results.add(result);
+            long start = System.nanoTime();
+            Object value;
+            try {
+                value = runInSession(name, arguments, null);
+            } catch (RuntimeException e) {
+                result.put("time", (System.nanoTime() - start) / 1e9);
+                result.put("status", "FAIL");
+                result.put("error", String.valueOf(e.getMessage()));
+                System.out.println("*WARN* Step " + (i + 1) + " '" + name + "' of batch failed: " + e.getMessage());
+                return results;
+            }
+            result.put("time", (System.nanoTime() - start) / 1e9);
+            result.put("return", value == null ? "" : value);
+            result.put("status", "PASS");
+        }
+        return results;
+    }
+
+    private static List<Object> toList(Object step) {
+        if (step instanceof List) {
+            return new ArrayList<Object>((List<?>) step);
+        } else if (step instanceof Object[]) {
+            return new ArrayList<Object>(Arrays.asList((Object[]) step));
+        }
+        return new ArrayList<Object>(Arrays.asList(step));
+    }
 }
@@ -0,0 +1,41 @@
+package com.github.rainmanwy.robotframework.sikulilib.keywords;
+
+import java.util.Map;
+
+import org.robotframework.javalib.annotation.ArgumentNames;
+import org.robotframework.javalib.annotation.RobotKeyword;
+import org.robotframework.javalib.annotation.RobotKeywords;
+
+import com.github.rainmanwy.robotframework.sikulilib.utils.PerformanceStatistics;
+
+/**
+ * Keywords to inspect where time is spent inside keywords.
+ */
+
+@RobotKeywords
+public class PerformanceKeywords {
+
+    @RobotKeyword("Get performance statistics"
+            + "\n\n Return latency statistics of every executed keyword, and of the internal phases of keywords:"
+            + " capture, match, save, ocr, input and preprocess (of frames for locators with preprocessing)."
+            + "\n Result is a dictionary with 'keywords' and 'phases', every entry contains count, total, mean, min,"
+            + " max, p50, p90 and p99 in milliseconds. Percentiles are approximated (power of two buckets)."
+            + "\n 'waits' counts waits per kind (wait, waitVanish, waitChange, waitForImage, waitForMultipleImages):"
+            + " count, found, polls, matches and pollsPerWait."
+            + "\n\n Examples:"
+            + "\n | ${statistics}= | Get Performance Statistics |"
+            + "\n | Log | ${statistics['phases']['match']['p90']} |")
+    @ArgumentNames({})
+    public Map<String, Object> getPerformanceStatistics() {
+        return PerformanceStatistics.getInstance().getStatistics();
+    }
+
+    @RobotKeyword("Reset performance statistics"
+            + "\n\n Clear all statistics returned by Get Performance Statistics."
+            + "\n\n Examples:"
+            + "\n | Reset Performance Statistics |")
+    @ArgumentNames({})
+    public void resetPerformanceStatistics() {
+        PerformanceStatistics.getInstance().reset();
+    }
+}
@@ -1,5 +1,6 @@
 package com.github.rainmanwy.robotframework.sikulilib.keywords;
 
+import java.awt.Rectangle;
 import java.io.File;
 import java.util.*;
 
@@ -12,9 +13,20 @@ import org.robotframework.javalib.annotation.RobotKeywordOverload;
 
 import com.github.rainmanwy.robotframework.sikulilib.exceptions.TimeoutException;
 import com.github.rainmanwy.robotframework.sikulilib.exceptions.ScreenOperationException;
-import com.github.rainmanwy.robotframework.sikulilib.utils.CaptureFolder;
+import com.github.rainmanwy.robotframework.sikulilib.utils.CaptureStore;
+import com.github.rainmanwy.robotframework.sikulilib.utils.FrameMatcher;
+import com.github.rainmanwy.robotframework.sikulilib.utils.LocationHints;
+import com.github.rainmanwy.robotframework.sikulilib.utils.MatchRegistry;
+import com.github.rainmanwy.robotframework.sikulilib.utils.OcrCache;
+import com.github.rainmanwy.robotframework.sikulilib.utils.PatternCache;
+import com.github.rainmanwy.robotframework.sikulilib.utils.PerformanceStatistics;
+import com.github.rainmanwy.robotframework.sikulilib.utils.PixelChangeDetector;
+import com.github.rainmanwy.robotframework.sikulilib.utils.ScreenSource;
+import com.github.rainmanwy.robotframework.sikulilib.utils.SessionContext;
+import com.github.rainmanwy.robotframework.sikulilib.utils.SettingsSnapshot;
+import com.github.rainmanwy.robotframework.sikulilib.utils.TileChangeDetector;
+import com.github.rainmanwy.robotframework.sikulilib.utils.WaitScheduler;
 
-import org.sikuli.basics.Settings;
 import org.sikuli.script.*;
 
 
@@ -26,23 +38,62 @@ import org.sikuli.script.*;
 @RobotKeywords
 public class ScreenKeywords {
 
-    private static double DEFAULT_TIMEOUT = 3.0;
-    private static Screen screen = new Screen();
-    private static Region region = new Region(screen);
-    private double timeout;
-    private Boolean isCaptureMatchedImage = true;
-    private Map<String, Match> highlightMap = new HashMap<String, Match>();
+    // waits search the whole roi once changed areas (with margin) cover more than this part of it
+    private static final double FULL_SEARCH_RATIO = 0.5;
 
-    public ScreenKeywords() {
-        timeout = DEFAULT_TIMEOUT;
+    /**
+     * Return screen state of the session running the keyword, see SessionContext.
+     */
+    private static SessionContext session() {
+        return SessionContext.current();
+    }
+
+    /**
+     * Return settings snapshot taken when the running keyword started.
+     */
+    private static SettingsSnapshot settings() {
+        return SettingsSnapshot.current();
     }
 
     public static Screen getScreen() {
-        return screen;
+        return session().getScreen();
     }
 
     public static Region getRegion() {
-        return region;
+        return session().getRegion();
+    }
+
+    public static ScreenSource getScreenSource() {
+        return session().getScreenSource();
+    }
+
+    public static void setScreenSource(ScreenSource screenSource) {
+        session().setScreenSource(screenSource);
+    }
+
+    /**
+     * Return true if input action should be performed, with a replay source it is only logged.
+     */
+    private static boolean performInput(String action) {
+        if (getScreenSource().performsInput()) {
+            return true;
+        }
+        System.out.println("*INFO* Replay, input not performed: " + action);
+        return false;
+    }
+
+    /**
+     * Take the input lock with the move mouse delay of the keyword, right before a single SikuliX input action.
+     * Return start time of the action, which should be given to endInput() in a finally block.
+     */
+    private static long beginInput() {
+        settings().beginInput();
+        return PerformanceStatistics.start();
+    }
+
+    private static void endInput(long inputStart) {
+        SettingsSnapshot.endInput();
+        recordPhase(PerformanceStatistics.INPUT, inputStart);
     }
 
     private Pattern getPattern(String locator) {
@@ -51,21 +102,62 @@ public class ScreenKeywords {
          * - Image.png
          * - Text
          * - Image.png = 0.9
+         * - Image.png[gray,scale=0.5] = 0.9 (see Preprocessing)
          * This will return pattern and similarity by parsing above.
+         * Parsed locators and decoded images are cached, see PatternCache.
+         * Locators without similarity get the min similarity of the session.
          */
-        Pattern pattern = null;
-        if (locator.contains(".png")) {
-            if (locator.contains("=")) {
-                locator = locator.replace(" ", "");
-                pattern = new Pattern(locator.substring(0, locator.indexOf("="))).similar(Float.parseFloat(locator.substring(locator.indexOf("=") + 1)));
-            } else {
-                pattern = new Pattern(locator).similar((float)Settings.MinSimilarity);
-            }
-        } else {
-            pattern = new Pattern(locator);
-        }
+        return PatternCache.getInstance().getPattern(locator, settings().getMinSimilarity());
+    }
 
-        return pattern;
+    @RobotKeyword("Get pattern cache statistics"
+            + "\n\nReturn hits, misses, evictions, entries and bytes of the decoded image cache"
+            + "\nExamples:"
+            + "\n| ${statistics}= | Get Pattern Cache Statistics |")
+    @ArgumentNames({})
+    public Map<String, Object> getPatternCacheStatistics() {
+        return PatternCache.getInstance().getStatistics();
+    }
+
+    @RobotKeyword("Get location hint statistics"
+            + "\n\nImages are searched around the location where they were matched last time first,"
+            + " return hits, misses and hit rate of these location hints"
+            + "\nExamples:"
+            + "\n| ${statistics}= | Get Location Hint Statistics |")
+    @ArgumentNames({})
+    public Map<String, Object> getLocationHintStatistics() {
+        return LocationHints.getInstance().getStatistics();
+    }
+
+    @RobotKeyword("Get OCR cache statistics"
+            + "\n\nText recognition results are cached by the pixels which were read, OCR language and options,"
+            + " return hits, misses and entries of this cache"
+            + "\nExamples:"
+            + "\n| ${statistics}= | Get OCR Cache Statistics |")
+    @ArgumentNames({})
+    public Map<String, Object> getOcrCacheStatistics() {
+        return OcrCache.getInstance().getStatistics();
+    }
+
+    @RobotKeyword("Get capture store statistics"
+            + "\n\nCaptures are stored by content, return how many captures were stored and how many were identical"
+            + " to a stored capture and not written again, and usage of the capture budget: files, bytes, evicted and"
+            + " pinned (kept because a keyword failed) captures, see Set Capture Budget"
+            + "\nExamples:"
+            + "\n| ${statistics}= | Get Capture Store Statistics |")
+    @ArgumentNames({})
+    public Map<String, Object> getCaptureStoreStatistics() {
+        return CaptureStore.getInstance().getStatistics();
+    }
+
+    @RobotKeyword("Get match handle statistics"
+            + "\n\nReturn number of match handles of the current session kept on server, their limits,"
+            + " and how many handles expired or were evicted"
+            + "\nExamples:"
+            + "\n| ${statistics}= | Get Match Handle Statistics |")
+    @ArgumentNames({})
+    public Map<String, Object> getMatchHandleStatistics() {
+        return session().getMatchRegistry().getStatistics();
     }
 
     @RobotKeyword("Set timeout"
@@ -74,8 +166,8 @@ public class ScreenKeywords {
                 + "\n| Set timeout | 10 |")
     @ArgumentNames({"timeout"})
     public String setTimeout(String timeout) {
-        double oldTimeout = this.timeout;
-        this.timeout = Double.parseDouble(timeout);
+        double oldTimeout = session().getSettings().getTimeout();
+        session().setTimeout(Double.parseDouble(timeout));
         return Double.toString(oldTimeout);
     }
 
@@ -97,7 +189,7 @@ public class ScreenKeywords {
             + "\n| Set captured folder | PATH |")
     @ArgumentNames({"path"})
     public void setCaptureFolder(String path) {
-        CaptureFolder.getInstance().setCaptureFolder(path);
+        session().getCaptureFolder().setCaptureFolder(path);
     }
 
     @RobotKeyword("Set capture matched image"
@@ -106,7 +198,7 @@ public class ScreenKeywords {
             + "\n| Set Capture Matched Image | false |")
     @ArgumentNames({"value"})
     public void setCaptureMatchedImage(boolean value) {
-        isCaptureMatchedImage = value;
+        session().setCaptureMatchedImage(value);
     }
 
     @RobotKeyword("Click"
@@ -115,13 +207,20 @@ public class ScreenKeywords {
             + "\n| Click | hello.png |")
     @ArgumentNames({"image", "xOffset=0", "yOffset=0"})
     public int[] click(String image, int xOffset, int yOffset) throws Exception{
-        Match match = wait(image, Double.toString(this.timeout));
+        Match match = wait(image, Double.toString(settings().getTimeout()));
         Location center = match.getCenter();
         try {
             int newX = center.getX() + xOffset;
             int newY = center.getY() + yOffset;
             Location newLocation = new Location(newX, newY);
-            region.click(newLocation);
+            if (performInput("click " + newLocation)) {
+                long inputStart = beginInput();
+                try {
+                    getRegion().click(newLocation);
+                } finally {
+                    endInput(inputStart);
+                }
+            }
         }
         catch (FindFailed e) {
             capture();
@@ -133,11 +232,18 @@ public class ScreenKeywords {
 
     @RobotKeywordOverload
     public int[] click(String image) throws Exception{
-        wait(image, Double.toString(this.timeout));
+        Match waited = wait(image, Double.toString(settings().getTimeout()));
+        if (!performInput("click " + image)) {
+            return regionFromMatch(waited);
+        }
         try {
-            region.click(getPattern(image));
-            Match match = region.getLastMatch();
-            return regionFromMatch(match);
+            long inputStart = beginInput();
+            try {
+                getRegion().click(waited);
+            } finally {
+                endInput(inputStart);
+            }
+            return regionFromMatch(waited);
         }
         catch (FindFailed e) {
             capture();
@@ -160,9 +266,19 @@ public class ScreenKeywords {
             + "\n| Click Text | Hello |")
     @ArgumentNames({"text"})
     public int[] clickText(String text) throws Exception{
-        Match match = screen.findLine(text);
+        ScreenImage image = captureArea(getScreen());
+        long ocrStart = PerformanceStatistics.start();
+        Match match = OcrCache.getInstance().findLine(image, text);
+        recordPhase(PerformanceStatistics.OCR, ocrStart);
         if (match != null) {
-            match.click();
+            if (performInput("click text " + text)) {
+                long inputStart = beginInput();
+                try {
+                    match.click();
+                } finally {
+                    endInput(inputStart);
+                }
+            }
             return regionFromMatch(match);
         } else {
             capture();
@@ -177,9 +293,19 @@ public class ScreenKeywords {
             + "\n| Region Click Text | Hello |")
     @ArgumentNames({"text"})
     public int[] RegionClickText(String text) throws Exception{
-        Match match = region.findLine(text);
+        ScreenImage image = captureArea(getRegion());
+        long ocrStart = PerformanceStatistics.start();
+        Match match = OcrCache.getInstance().findLine(image, text);
+        recordPhase(PerformanceStatistics.OCR, ocrStart);
         if (match != null) {
-            match.click();
+            if (performInput("click text " + text)) {
+                long inputStart = beginInput();
+                try {
+                    match.click();
+                } finally {
+                    endInput(inputStart);
+                }
+            }
             return regionFromMatch(match);
         } else {
             capture();
@@ -190,6 +316,8 @@ public class ScreenKeywords {
     @RobotKeyword("Click region"
             + "\n\n Click on defined region cooridinates."
             + "\n Optionally Wait for specified time to ensure region has changed."
+            + " Region counts as changed when more pixels than the change threshold differ from the region before click,"
+            + " see Set Change Threshold."
             + "\n Also, optionally set highlight"
             + "\n\n Examples:"
             + "\n | ${coor} | Create List | 0 | 0 | 100 | 100 |"
@@ -204,10 +332,21 @@ public class ScreenKeywords {
         int h = Integer.parseInt(coordinates.get(3).toString());
         Region region = new Region(x, y, w, h);
         // After clicking on plugin, make sure it has changed, before returning from this step.
-        String img = capture(region);
-        region.click();
-        if (waitChange > 0) {
-            region.waitVanish(img, waitChange);
+        PixelChangeDetector detector = waitChange > 0 ? new PixelChangeDetector(captureArea(region).getImage()) : null;
+        if (performInput("click " + region)) {
+            long inputStart = beginInput();
+            try {
+                region.click();
+            } finally {
+                endInput(inputStart);
+            }
+        }
+        if (detector != null) {
+            try {
+                waitForChange(region, detector, waitChange);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
             capture(region);
         }
         if (highlight_timeout > 0) {
@@ -215,6 +354,26 @@ public class ScreenKeywords {
         }
     }
 
+    /**
+     * Poll region until it differs from the reference of detector, return false if timeout happened.
+     */
+    private boolean waitForChange(Region region, PixelChangeDetector detector, double timeout) throws InterruptedException {
+        double threshold = settings().getChangeThreshold();
+        WaitScheduler scheduler = newWaitScheduler("waitChange", timeout);
+        do {
+            scheduler.beginPoll();
+            scheduler.matched();
+            boolean changed = detector.isChanged(captureArea(region).getImage(), threshold);
+            scheduler.endPoll(changed);
+            if (changed) {
+                scheduler.finish(true);
+                return true;
+            }
+        } while (scheduler.sleep());
+        scheduler.finish(false);
+        return false;
+    }
+
     @RobotKeywordOverload
     public void clickRegion(ArrayList<Object> coordinates, double waitChange) {
         clickRegion(coordinates, waitChange, 0);
@@ -222,7 +381,7 @@ public class ScreenKeywords {
 
     @RobotKeywordOverload
     public void clickRegion(ArrayList<Object> coordinates) {
-        clickRegion(coordinates, this.timeout, 0);
+        clickRegion(coordinates, settings().getTimeout(), 0);
     }
 
     @RobotKeyword("Click nth"
@@ -233,15 +392,18 @@ public class ScreenKeywords {
             + "\n | Click on nth image in region | image.png | 1 | ${FALSE} |")
     @ArgumentNames({"image", "index", "sortByColumn=true"})
     public int[] clickNth(String image, int index, Boolean sortByColumn) throws Exception {
-        List<Match> matches = null;
-        if (sortByColumn) {
-            matches = region.findAllByColumn(getPattern(image));
-        } else{
-            matches = region.findAllByRow(getPattern(image));
-        }
+        List<Match> matches = FrameMatcher.findAll(captureFrame(), getRegion(), getPattern(image),
+                sortByColumn ? FrameMatcher.BY_COLUMN : FrameMatcher.BY_ROW);
         Match match = matches.get(index);
         capture(match);
-        matches.get(index).click();
+        if (performInput("click " + match)) {
+            long inputStart = beginInput();
+            try {
+                match.click();
+            } finally {
+                endInput(inputStart);
+            }
+        }
         return regionFromMatch(match);
     }
 
@@ -252,28 +414,42 @@ public class ScreenKeywords {
 
     @RobotKeywordOverload
     public int[] doubleClick(String image) throws Exception{
-        wait(image, Double.toString(this.timeout));
+        Match waited = wait(image, Double.toString(settings().getTimeout()));
+        if (!performInput("doubleClick " + image)) {
+            return regionFromMatch(waited);
+        }
         try {
-            region.doubleClick(getPattern(image));
+            long inputStart = beginInput();
+            try {
+                getRegion().doubleClick(waited);
+            } finally {
+                endInput(inputStart);
+            }
         }
         catch (FindFailed e) {
             throw new ScreenOperationException("Click "+image+" failed"+e.getMessage(), e);
         }
-        Match match = region.getLastMatch();
-        return regionFromMatch(match);
+        return regionFromMatch(waited);
     }
 
     //added by auyong
     @RobotKeyword("Double click")
     @ArgumentNames({"image", "xOffset=0", "yOffset=0"})
     public int[] doubleClick(String image, int xOffset, int yOffset) throws Exception{
-        Match match = wait(image, Double.toString(this.timeout));
+        Match match = wait(image, Double.toString(settings().getTimeout()));
         Location center = match.getCenter();
         try {
             int newX = center.getX() + xOffset;
             int newY = center.getY() + yOffset;
             Location newLocation = new Location(newX, newY);
-            region.doubleClick(newLocation);
+            if (performInput("doubleClick " + newLocation)) {
+                long inputStart = beginInput();
+                try {
+                    getRegion().doubleClick(newLocation);
+                } finally {
+                    endInput(inputStart);
+                }
+            }
         }
         catch (FindFailed e) {
             capture();
@@ -284,15 +460,22 @@ public class ScreenKeywords {
 
     @RobotKeywordOverload
     public int[] rightClick(String image) throws Exception {
-        wait(image, Double.toString(this.timeout));
+        Match waited = wait(image, Double.toString(settings().getTimeout()));
+        if (!performInput("rightClick " + image)) {
+            return regionFromMatch(waited);
+        }
         try {
-            region.rightClick(getPattern(image));
+            long inputStart = beginInput();
+            try {
+                getRegion().rightClick(waited);
+            } finally {
+                endInput(inputStart);
+            }
         } catch (FindFailed e) {
             capture();
             throw new ScreenOperationException("Click " + image + " failed" + e.getMessage(), e);
         }
-        Match match = region.getLastMatch();
-        return regionFromMatch(match);
+        return regionFromMatch(waited);
     }
 
     @RobotKeyword("Right click"
@@ -301,13 +484,20 @@ public class ScreenKeywords {
             + "\n| Click | hello.png |")
     @ArgumentNames({"image", "xOffset=0", "yOffset=0"})
     public int[] rightClick(String image, int xOffset, int yOffset) throws Exception {
-        Match match = wait(image, Double.toString(this.timeout));
+        Match match = wait(image, Double.toString(settings().getTimeout()));
         Location center = match.getCenter();
         try {
             int newX = center.getX() + xOffset;
             int newY = center.getY() + yOffset;
             Location newLocation = new Location(newX, newY);
-            region.rightClick(newLocation);
+            if (performInput("rightClick " + newLocation)) {
+                long inputStart = beginInput();
+                try {
+                    getRegion().rightClick(newLocation);
+                } finally {
+                    endInput(inputStart);
+                }
+            }
         } catch (FindFailed e) {
             capture();
             throw new ScreenOperationException("Click " + image + " failed" + e.getMessage(), e);
@@ -317,26 +507,177 @@ public class ScreenKeywords {
     }
     
     private Match wait(String image, String timeout) throws TimeoutException {
+        Pattern pattern = getPattern(image);
+        Match match;
         try {
-            Match match = region.wait(getPattern(image), Double.parseDouble(timeout));
-            capture(match);
-            return match;
+            match = waitForPattern(image, pattern, Double.parseDouble(timeout));
         }
-        catch(FindFailed e) {
-            capture(region);
-            throw new TimeoutException("Timeout happened, could not find "+ getPattern(image).toString(), e);
+        catch(InterruptedException e) {
+            capture(getRegion());
+            throw new TimeoutException("Interrupted while waiting for "+ pattern.toString(), e);
         }
+        if (match == null) {
+            capture(getRegion());
+            throw new TimeoutException("Timeout happened, could not find "+ pattern.toString());
+        }
+        capture(match);
+        return match;
+    }
+
+    /**
+     * Poll roi until pattern is found, return null if timeout happened.
+     * Between polls only the areas which changed (plus a template sized margin) are matched again,
+     * if nothing changed the previous result is reused.
+     */
+    private Match waitForPattern(String image, Pattern pattern, double timeout) throws InterruptedException {
+        TileChangeDetector detector = new TileChangeDetector();
+        WaitScheduler scheduler = newWaitScheduler("wait", timeout);
+        do {
+            scheduler.beginPoll();
+            ScreenImage frame = captureFrame();
+            List<Rectangle> dirty = detector.update(frame.getImage());
+            Match match = null;
+            if (dirty == null) {
+                scheduler.matched();
+                match = findInFrame(image, frame, pattern);
+            } else if (!dirty.isEmpty()) {
+                scheduler.matched();
+                match = findAround(frame, dirty, pattern);
+            }
+            scheduler.endPoll(dirty == null || !dirty.isEmpty());
+            if (match != null) {
+                LocationHints.getInstance().put(image, match.getRect());
+                session().setLastMatch(match);
+                scheduler.finish(true);
+                return match;
+            }
+        } while (scheduler.sleep());
+        scheduler.finish(false);
+        return null;
+    }
+
+    /**
+     * Poll roi until pattern vanished, return false if timeout happened.
+     * Matching is only repeated when tiles covering the last match changed.
+     */
+    private boolean waitForPatternVanish(Pattern pattern, double timeout) throws InterruptedException {
+        TileChangeDetector detector = new TileChangeDetector();
+        WaitScheduler scheduler = newWaitScheduler("waitVanish", timeout);
+        Match match = null;
+        do {
+            scheduler.beginPoll();
+            ScreenImage frame = captureFrame();
+            List<Rectangle> dirty = detector.update(frame.getImage());
+            if (dirty == null || TileChangeDetector.intersects(dirty,
+                    new Rectangle(match.x - frame.x, match.y - frame.y, match.w, match.h))) {
+                scheduler.matched();
+                match = FrameMatcher.find(frame, getRegion(), pattern);
+            }
+            scheduler.endPoll(dirty == null || !dirty.isEmpty());
+            if (match == null) {
+                scheduler.finish(true);
+                return true;
+            }
+        } while (scheduler.sleep());
+        scheduler.finish(false);
+        return false;
+    }
+
+    /**
+     * Find pattern in frame captured from roi.
+     * The neighborhood of the location where image was matched last time is searched first,
+     * whole frame is only searched when image is not found there.
+     */
+    private Match findInFrame(String image, ScreenImage frame, Pattern pattern) {
+        LocationHints hints = LocationHints.getInstance();
+        Rectangle hint = hints.get(image);
+        if (hint != null) {
+            Rectangle around = new Rectangle(hint.x - hint.width, hint.y - hint.height, hint.width * 3, hint.height * 3);
+            around = around.intersection(frame.getROI());
+            Match match = null;
+            if (around.width >= hint.width && around.height >= hint.height) {
+                match = FrameMatcher.find(FrameMatcher.crop(frame, around), new Region(around), pattern);
+            }
+            if (match != null) {
+                hints.hit();
+                return match;
+            }
+            hints.miss();
+        }
+        Match match = FrameMatcher.find(frame, getRegion(), pattern);
+        if (match != null) {
+            hints.put(image, match.getRect());
+        }
+        return match;
+    }
+
+    /**
+     * Find pattern around the changed areas of frame, every area is grown by the template size.
+     * If the grown areas cover more than FULL_SEARCH_RATIO of the frame, the whole roi is searched once instead.
+     * Of the matches in several areas the best is returned, as a search of the whole roi would.
+     */
+    private Match findAround(ScreenImage frame, List<Rectangle> dirty, Pattern pattern) {
+        int marginX = frame.w;
+        int marginY = frame.h;
+        Image template = pattern.getImage();
+        if (template != null && template.isValid()) {
+            marginX = template.getSize().width;
+            marginY = template.getSize().height;
+        }
+        Rectangle bounds = new Rectangle(0, 0, frame.w, frame.h);
+        List<Rectangle> areas = new ArrayList<Rectangle>();
+        long covered = 0;
+        for (Rectangle changed : dirty) {
+            Rectangle area = new Rectangle(changed.x - marginX, changed.y - marginY,
+                    changed.width + 2 * marginX, changed.height + 2 * marginY);
+            area = area.intersection(bounds);
+            covered += (long) area.width * area.height;
+            area.translate(frame.x, frame.y);
+            areas.add(area);
+        }
+        if (covered > FULL_SEARCH_RATIO * frame.w * frame.h) {
+            return FrameMatcher.find(frame, getRegion(), pattern);
+        }
+        Match best = null;
+        for (Rectangle area : areas) {
+            Match match = FrameMatcher.find(FrameMatcher.crop(frame, area), new Region(area), pattern);
+            if (match != null && (best == null || match.getScore() > best.getScore())) {
+                best = match;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Return polling schedule of a wait, backing off up to the wait scan rate of the session.
+     */
+    private WaitScheduler newWaitScheduler(String name, double timeout) {
+        return new WaitScheduler(name, timeout, settings().getWaitScanRate());
     }
 
     private Match find(String image) {
-        try {
-            Match match = region.find(getPattern(image));
-            capture(match);
-            return match;
-        } catch (FindFailed e) {
-            System.out.println("Could not find " + getPattern(image).toString());
+        Pattern pattern = getPattern(image);
+        Match match = findInFrame(image, captureFrame(), pattern);
+        if (match == null) {
+            System.out.println("Could not find " + pattern.toString());
             return null;
         }
+        session().setLastMatch(match);
+        capture(match);
+        return match;
+    }
+
+    /**
+     * Search image once in area, in a frame of the screen source like all searches, so replay sources are searched too.
+     * Fail like Region.find() if image is not found.
+     */
+    private Match findOnce(Region area, String image) throws FindFailed {
+        Pattern pattern = getPattern(image);
+        Match match = FrameMatcher.find(captureArea(area), area, pattern);
+        if (match == null) {
+            throw new FindFailed("Could not find " + pattern + " in " + area);
+        }
+        return match;
     }
 
     @RobotKeyword("Wait until screen contain"
@@ -350,8 +691,13 @@ public class ScreenKeywords {
             + "\n Wait until image not in screen")
     @ArgumentNames({"image", "timeout"})
     public void waitUntilScreenNotContain(String image, String timeout) throws TimeoutException {
-        boolean result = region.waitVanish(getPattern(image), Double.parseDouble(timeout));
-        capture(region);
+        boolean result;
+        try {
+            result = waitForPatternVanish(getPattern(image), Double.parseDouble(timeout));
+        } catch (InterruptedException e) {
+            throw new TimeoutException("Interrupted while waiting "+image+" vanish", e);
+        }
+        capture(getRegion());
         if (!result) {
             throw new TimeoutException(image+" is still in screen");
         }
@@ -392,7 +738,16 @@ public class ScreenKeywords {
         if ( !"".equals(image) ) {
             this.click(image);
         }
-        int result = region.type(text);
+        if (!performInput("type " + text)) {
+            return;
+        }
+        int result;
+        long inputStart = beginInput();
+        try {
+            result = getRegion().type(text);
+        } finally {
+            endInput(inputStart);
+        }
         if (result == 0) {
             throw new ScreenOperationException("Input text failed");
         }
@@ -420,7 +775,14 @@ public class ScreenKeywords {
                 throw new ScreenOperationException("No " +modifer.toString() + " in class org.sikuli.script.Key ");
             }
         }
-        region.type(text, sum);
+        if (performInput("type " + keys)) {
+            long inputStart = beginInput();
+            try {
+                getRegion().type(text, sum);
+            } finally {
+                endInput(inputStart);
+            }
+        }
     }
 
     @RobotKeyword("Paste text. Image could be empty")
@@ -431,7 +793,16 @@ public class ScreenKeywords {
         if ( !"".equals(image) ) {
             this.click(image);
         }
-        int result = region.paste(text);
+        if (!performInput("paste " + text)) {
+            return;
+        }
+        int result;
+        long inputStart = beginInput();
+        try {
+            result = getRegion().paste(text);
+        } finally {
+            endInput(inputStart);
+        }
         if (result != 1) {
             throw new ScreenOperationException("Paste text failed");
         }
@@ -440,32 +811,80 @@ public class ScreenKeywords {
     @RobotKeyword("Click in. \nClick target image in area image.")
     @ArgumentNames({"areaImage", "targetImage"})
     public void clickIn(String areaImage, String targetImage) throws Exception {
-        Match match = wait(areaImage, Double.toString(this.timeout));
+        Match match = wait(areaImage, Double.toString(settings().getTimeout()));
         System.out.println(areaImage + " is found!");
-        capture(match.find(getPattern(targetImage)));
-        match.click(getPattern(targetImage));
+        Match target = findOnce(match, targetImage);
+        capture(target);
+        if (performInput("click " + targetImage)) {
+            long inputStart = beginInput();
+            try {
+                match.click(target);
+            } finally {
+                endInput(inputStart);
+            }
+        }
     }
 
     @RobotKeyword("Double click in. \nDouble click target image in area image.")
     @ArgumentNames({"areaImage", "targetImage"})
     public void doubleClickIn(String areaImage, String targetImage) throws Exception {
-        Match match = wait(areaImage, Double.toString(this.timeout));
+        Match match = wait(areaImage, Double.toString(settings().getTimeout()));
         System.out.println(areaImage + " is found!");
-        capture(match.find(getPattern(targetImage)));
-        match.doubleClick(getPattern(targetImage));
+        Match target = findOnce(match, targetImage);
+        capture(target);
+        if (performInput("doubleClick " + targetImage)) {
+            long inputStart = beginInput();
+            try {
+                match.doubleClick(target);
+            } finally {
+                endInput(inputStart);
+            }
+        }
     }
 
     @RobotKeyword("Right click in. \nRight click target image in area image.")
     @ArgumentNames({"areaImage", "targetImage"})
     public void rightClickIn(String areaImage, String targetImage) throws Exception {
-        Match match = wait(areaImage, Double.toString(this.timeout));
+        Match match = wait(areaImage, Double.toString(settings().getTimeout()));
         System.out.println(areaImage + " is found!");
-        capture(match.find(getPattern(targetImage)));
-        match.rightClick(getPattern(targetImage));
+        Match target = findOnce(match, targetImage);
+        capture(target);
+        if (performInput("rightClick " + targetImage)) {
+            long inputStart = beginInput();
+            try {
+                match.rightClick(target);
+            } finally {
+                endInput(inputStart);
+            }
+        }
     }
 
+    /**
+     * Capture roi for matching from the screen source, with the live source the newest frame of the frame grabber
+     * is used when it is running.
+     */
+    private ScreenImage captureFrame() {
+        return captureArea(getRegion());
+    }
+
+    private static ScreenImage captureArea(Region area) {
+        long captureStart = PerformanceStatistics.start();
+        ScreenImage image = getScreenSource().capture(getScreen(), area);
+        recordPhase(PerformanceStatistics.CAPTURE, captureStart);
+        return image;
+    }
+
+    private static void recordPhase(String phase, long start) {
+        PerformanceStatistics.getInstance().recordPhase(phase, start);
+    }
+
+    /**
+     * Screenshots are taken with snapshot(), so they never step a replay source.
+     */
     private String capture() {
-        ScreenImage image = screen.capture(region);
+        long captureStart = PerformanceStatistics.start();
+        ScreenImage image = getScreenSource().snapshot(getScreen(), getRegion());
+        recordPhase(PerformanceStatistics.CAPTURE, captureStart);
         return saveImage(image);
     }
 
@@ -473,9 +892,19 @@ public class ScreenKeywords {
         return capture(region, null);
     }
 
+    /**
+     * Capture match, the match plus margin or the whole roi as the capture policy of the session says.
+     */
+    private String capture(Match match) {
+        Rectangle area = session().getCapturePolicy().matchArea(match.getRect(), getRegion().getRect());
+        return capture(new Region(area));
+    }
+
     private String capture(Region region, String imageName) {
-        if (isCaptureMatchedImage) {
-            ScreenImage image = screen.capture(region);
+        if (session().isCaptureMatchedImage()) {
+            long captureStart = PerformanceStatistics.start();
+            ScreenImage image = getScreenSource().snapshot(getScreen(), region);
+            recordPhase(PerformanceStatistics.CAPTURE, captureStart);
             return saveImage(image, imageName);
         }
         return null;
@@ -494,7 +923,7 @@ public class ScreenKeywords {
         int w = Integer.parseInt(coordinates.get(2).toString());
         int h = Integer.parseInt(coordinates.get(3).toString());
         Region region = new Region(x, y, w, h);
-        ScreenImage image = ScreenKeywords.getScreen().capture(region);
+        ScreenImage image = getScreenSource().snapshot(getScreen(), region);
         return saveImage(image, imageName);
     }
 
@@ -506,12 +935,12 @@ public class ScreenKeywords {
     @RobotKeyword("Capture Roi")
     @ArgumentNames({"imageName="})
     public String captureRoi(String imageName){
-        return capture(region, imageName);
+        return capture(getRegion(), imageName);
     }
 
     @RobotKeywordOverload
     public String captureRoi(){
-        return capture(region);
+        return capture(getRegion());
     }
 
     @RobotKeyword("Capture whole screen, file name is returned")
@@ -524,12 +953,12 @@ public class ScreenKeywords {
     @ArgumentNames({"image", "secs="})
     public void highlight(String image, Integer secs) throws Exception{
         Match match = null;
-        if (highlightMap.containsKey(image)==false) {
-            match = region.find(getPattern(image));
+        if (session().getHighlights().containsKey(image)==false) {
+            match = findOnce(getRegion(), image);
             if (secs != null) {
                 match.highlight(secs);
             } else {
-                highlightMap.put(image, match);
+                session().getHighlights().put(image, match);
                 match.highlight();
             }
             capture();
@@ -547,10 +976,10 @@ public class ScreenKeywords {
     @RobotKeyword("Clear highlight from screen")
     @ArgumentNames({"image"})
     public void clearHighlight(String image) {
-        if (highlightMap.containsKey(image)) {
-            Match match = highlightMap.get(image);
+        if (session().getHighlights().containsKey(image)) {
+            Match match = session().getHighlights().get(image);
             match.highlight();
-            highlightMap.remove(image);
+            session().getHighlights().remove(image);
         } else {
             System.out.println("*WARN* " + image + " was not highlighted before");
         }
@@ -559,10 +988,10 @@ public class ScreenKeywords {
     @RobotKeyword("Clear all highlights from screen")
     @ArgumentNames({})
     public void clearAllHighlights() {
-        for(Match match : highlightMap.values()) {
+        for(Match match : session().getHighlights().values()) {
             match.highlight();
         }
-        highlightMap.clear();
+        session().getHighlights().clear();
     }
 
     @RobotKeyword("Highlight region")
@@ -580,21 +1009,43 @@ public class ScreenKeywords {
     @RobotKeyword("Highlight ROI")
     @ArgumentNames({"timeout"})
     public void highlightRoi(int timeout) {
-        region.highlight(timeout);
-        capture(region);
+        getRegion().highlight(timeout);
+        capture(getRegion());
     }
 
     @RobotKeyword("Drag the source image to target image.\nIf source image is empty, drag the last match and drop at given target")
     @ArgumentNames({"srcImage", "targetImage"})
     public void dragAndDrop(String srcImage, String targetImage) throws Exception {
         int result = 0;
+        if (!performInput("dragDrop " + srcImage + " " + targetImage)) {
+            if (!"".equals(srcImage)) {
+                wait(srcImage, Double.toString(settings().getTimeout()));
+            }
+            wait(targetImage, Double.toString(settings().getTimeout()));
+            return;
+        }
         if ( "".equals(srcImage) ) {
-            result = region.dragDrop(targetImage);
-            wait(targetImage, Double.toString(this.timeout));
+            // target is found before input, so the input lock is not held while searching
+            Match targetMatch = wait(targetImage, Double.toString(settings().getTimeout()));
+            long inputStart = beginInput();
+            try {
+                if (session().getLastMatch() != null) {
+                    result = getRegion().dragDrop(session().getLastMatch(), targetMatch);
+                } else {
+                    result = getRegion().dragDrop(targetMatch);
+                }
+            } finally {
+                endInput(inputStart);
+            }
         } else {
-            Match srcMatch = wait(srcImage, Double.toString(this.timeout));
-            Match targetMatch = wait(targetImage, Double.toString(this.timeout));
-            result = region.dragDrop(srcMatch, targetMatch);
+            Match srcMatch = wait(srcImage, Double.toString(settings().getTimeout()));
+            Match targetMatch = wait(targetImage, Double.toString(settings().getTimeout()));
+            long inputStart = beginInput();
+            try {
+                result = getRegion().dragDrop(srcMatch, targetMatch);
+            } finally {
+                endInput(inputStart);
+            }
         }
         if (result==0) {
             capture();
@@ -608,17 +1059,25 @@ public class ScreenKeywords {
         int result = 0;
         Match srcMatch;
         if ( "".equals(srcImage) ) {
-            srcMatch = region.getLastMatch();
+            srcMatch = session().getLastMatch() != null ? session().getLastMatch() : getRegion().getLastMatch();
             if(srcMatch == null) {
                 throw new ScreenOperationException("Please input srcImage");
             }
         } else {
-            srcMatch = wait(srcImage, Double.toString(this.timeout));
+            srcMatch = wait(srcImage, Double.toString(settings().getTimeout()));
         }
         int newX = srcMatch.getX() + xOffset;
         int newY = srcMatch.getY() + yOffset;
         Location newLocation = new Location(newX, newY);
-        result = region.dragDrop(newLocation);
+        if (!performInput("dragDrop " + srcMatch + " " + newLocation)) {
+            return;
+        }
+        long inputStart = beginInput();
+        try {
+            result = getRegion().dragDrop(newLocation);
+        } finally {
+            endInput(inputStart);
+        }
         if (result==0) {
             capture();
             throw new ScreenOperationException("Failed to drag "+srcImage+" to " +newLocation);
@@ -650,7 +1109,14 @@ public class ScreenKeywords {
     public void pressSpecialKey(String specialCharName) throws ScreenOperationException{
         try{
             Object key =  Key.class.getField(specialCharName).get(null);
-            region.type(key.toString());
+            if (performInput("type " + specialCharName)) {
+                long inputStart = beginInput();
+                try {
+                    getRegion().type(key.toString());
+                } finally {
+                    endInput(inputStart);
+                }
+            }
         }
         catch(ReflectiveOperationException e){
             throw new ScreenOperationException("No " +specialCharName.toString() + " in class org.sikuli.script.Key ");
@@ -667,7 +1133,14 @@ public class ScreenKeywords {
     public void keyDown(String specialCharName) throws ScreenOperationException{
         try{
             Object key =  Key.class.getField(specialCharName).get(null);
-            region.keyDown(key.toString());
+            if (performInput("keyDown " + specialCharName)) {
+                long inputStart = beginInput();
+                try {
+                    getRegion().keyDown(key.toString());
+                } finally {
+                    endInput(inputStart);
+                }
+            }
         }
         catch(ReflectiveOperationException e){
             throw new ScreenOperationException("No " +specialCharName.toString() + " in class org.sikuli.script.Key ");
@@ -684,7 +1157,14 @@ public class ScreenKeywords {
     public void keyUp(String specialCharName) throws ScreenOperationException{
         try{
             Object key =  Key.class.getField(specialCharName).get(null);
-            region.keyUp(key.toString());
+            if (performInput("keyUp " + specialCharName)) {
+                long inputStart = beginInput();
+                try {
+                    getRegion().keyUp(key.toString());
+                } finally {
+                    endInput(inputStart);
+                }
+            }
         }
         catch(ReflectiveOperationException e){
             throw new ScreenOperationException("No " +specialCharName.toString() + " in class org.sikuli.script.Key ");
@@ -701,8 +1181,17 @@ public class ScreenKeywords {
             + "\n | Mouse Move |")
     @ArgumentNames({"image="})
     public void mouseMove(String image) throws Exception{
-        Match match = wait(image, Double.toString(this.timeout));
-        int result = match.mouseMove(getPattern(image));
+        Match match = wait(image, Double.toString(settings().getTimeout()));
+        if (!performInput("mouseMove " + image)) {
+            return;
+        }
+        int result;
+        long inputStart = beginInput();
+        try {
+            result = getRegion().mouseMove(match);
+        } finally {
+            endInput(inputStart);
+        }
         if (result == 0) {
             throw new ScreenOperationException("Failed to move mouse to "+image);
         }
@@ -710,7 +1199,16 @@ public class ScreenKeywords {
 
     @RobotKeywordOverload
     public void mouseMove() throws Exception{
-        int result = region.mouseMove();
+        if (!performInput("mouseMove " + session().getLastMatch())) {
+            return;
+        }
+        int result;
+        long inputStart = beginInput();
+        try {
+            result = session().getLastMatch() != null ? getRegion().mouseMove(session().getLastMatch()) : getRegion().mouseMove();
+        } finally {
+            endInput(inputStart);
+        }
         if (result==0) {
             throw new ScreenOperationException("Failed to move mouse to last matched image");
         }
@@ -728,7 +1226,16 @@ public class ScreenKeywords {
         int w = Integer.parseInt(coordinates.get(2).toString());
         int h = Integer.parseInt(coordinates.get(3).toString());
         Region region = new Region(x, y, w, h);
-        int result = region.mouseMove();
+        if (!performInput("mouseMove " + region)) {
+            return;
+        }
+        int result;
+        long inputStart = beginInput();
+        try {
+            result = region.mouseMove();
+        } finally {
+            endInput(inputStart);
+        }
         if (result==0) {
             throw new ScreenOperationException("Failed to move mouse to last matched image");
         }
@@ -751,7 +1258,16 @@ public class ScreenKeywords {
     @ArgumentNames({"x=0", "y=0"})
     public void mouseMoveLocation(int x, int y) throws Exception {
         Location location = new Location(x, y);
-        int result = region.mouseMove(location);
+        if (!performInput("mouseMove " + location)) {
+            return;
+        }
+        int result;
+        long inputStart = beginInput();
+        try {
+            result = getRegion().mouseMove(location);
+        } finally {
+            endInput(inputStart);
+        }
         if (result==0) {
             throw new ScreenOperationException("Failed to move mouse to last matched image");
         }
@@ -774,7 +1290,14 @@ public class ScreenKeywords {
                 int buttonValue =  (Integer) Button.class.getField(button).get(null);
                 sum = sum + buttonValue;
             }
-            region.mouseDown(sum);
+            if (performInput("mouseDown " + Arrays.toString(mouseButtons))) {
+                long inputStart = beginInput();
+                try {
+                    getRegion().mouseDown(sum);
+                } finally {
+                    endInput(inputStart);
+                }
+            }
         }
         catch(ReflectiveOperationException e){
             throw new ScreenOperationException("No " +currentButton + " in class org.sikuli.script.Button ");
@@ -798,7 +1321,14 @@ public class ScreenKeywords {
                 int buttonValue =  (Integer) Button.class.getField(button).get(null);
                 sum = sum + buttonValue;
             }
-            region.mouseUp(sum);
+            if (performInput("mouseUp " + Arrays.toString(mouseButtons))) {
+                long inputStart = beginInput();
+                try {
+                    getRegion().mouseUp(sum);
+                } finally {
+                    endInput(inputStart);
+                }
+            }
         }
         catch(ReflectiveOperationException e){
             throw new ScreenOperationException("No " +currentButton + " in class org.sikuli.script.Button ");
@@ -807,7 +1337,15 @@ public class ScreenKeywords {
 
     @RobotKeywordOverload
     public void mouseUp() throws Exception{
-        region.mouseUp();
+        if (!performInput("mouseUp")) {
+            return;
+        }
+        long inputStart = beginInput();
+        try {
+            getRegion().mouseUp();
+        } finally {
+            endInput(inputStart);
+        }
     }
 
     @RobotKeyword("Wheel up"
@@ -817,13 +1355,29 @@ public class ScreenKeywords {
             + "\n | Wheel Up     | 5   |  test.png   |")
     @ArgumentNames({"steps", "image="})
     public void wheelUp(int steps, String image) throws Exception{
-        wait(image, Double.toString(this.timeout));
-        region.wheel(getPattern(image), Button.WHEEL_UP, steps);
+        Match match = wait(image, Double.toString(settings().getTimeout()));
+        if (!performInput("wheel up " + steps + " " + image)) {
+            return;
+        }
+        long inputStart = beginInput();
+        try {
+            getRegion().wheel(match, Button.WHEEL_UP, steps);
+        } finally {
+            endInput(inputStart);
+        }
     }
 
     @RobotKeywordOverload
     public void wheelUp(int steps) throws Exception{
-        region.wheel(Button.WHEEL_UP, steps);
+        if (!performInput("wheel up " + steps)) {
+            return;
+        }
+        long inputStart = beginInput();
+        try {
+            getRegion().wheel(Button.WHEEL_UP, steps);
+        } finally {
+            endInput(inputStart);
+        }
     }
 
     @RobotKeyword("Wheel down"
@@ -833,18 +1387,38 @@ public class ScreenKeywords {
             + "\n | Wheel Down     | 5   |  test.png   |")
     @ArgumentNames({"steps", "image="})
     public void wheelDown(int steps, String image) throws Exception{
-        wait(image, Double.toString(this.timeout));
-        region.wheel(getPattern(image), Button.WHEEL_DOWN, steps);
+        Match match = wait(image, Double.toString(settings().getTimeout()));
+        if (!performInput("wheel down " + steps + " " + image)) {
+            return;
+        }
+        long inputStart = beginInput();
+        try {
+            getRegion().wheel(match, Button.WHEEL_DOWN, steps);
+        } finally {
+            endInput(inputStart);
+        }
     }
 
     @RobotKeywordOverload
     public void wheelDown(int steps) throws Exception{
-        region.wheel(Button.WHEEL_DOWN, steps);
+        if (!performInput("wheel down " + steps)) {
+            return;
+        }
+        long inputStart = beginInput();
+        try {
+            getRegion().wheel(Button.WHEEL_DOWN, steps);
+        } finally {
+            endInput(inputStart);
+        }
     }
 
     @RobotKeywordOverload
     public String getText() throws Exception {
-        return region.text();
+        ScreenImage image = captureArea(getRegion());
+        long ocrStart = PerformanceStatistics.start();
+        String text = OcrCache.getInstance().readText(image);
+        recordPhase(PerformanceStatistics.OCR, ocrStart);
+        return text;
     }
 
     @RobotKeyword("Get text"
@@ -859,11 +1433,15 @@ public class ScreenKeywords {
     public String getText(String image) throws Exception {
         Match match = find(image);
         if (match == null) {
-            capture(region);
+            capture(getRegion());
             throw new ScreenOperationException("Could not find " + image);
         }
-        Image matchImage = match.getImage();
-        return matchImage.text();
+        // text is read from the frame the image was found in
+        ScreenImage matchImage = getScreenSource().snapshot(getScreen(), match);
+        long ocrStart = PerformanceStatistics.start();
+        String text = OcrCache.getInstance().readText(matchImage);
+        recordPhase(PerformanceStatistics.OCR, ocrStart);
+        return text;
     }
 
     @RobotKeyword("Wait For Image"
@@ -875,20 +1453,32 @@ public class ScreenKeywords {
             + "\n | Wait For Image  | wanted.png | notWanted.png | 5 |")
     @ArgumentNames({"wantedImage", "notWantedImage", "timeout"})
     public void waitForImage(String wantedImage, String notWantedImage, int timeout) throws Exception {
-        Date begineTime = new Date();
-        while (System.currentTimeMillis() - begineTime.getTime() < timeout*1000) {
-            Match wantedMatch = region.exists(getPattern(wantedImage), 0);
-            Match notWantedMatch = region.exists(getPattern(notWantedImage), 0);
-            if (wantedMatch != null) {
+        List<Pattern> patterns = Arrays.asList(getPattern(wantedImage), getPattern(notWantedImage));
+        TileChangeDetector detector = new TileChangeDetector();
+        WaitScheduler scheduler = newWaitScheduler("waitForImage", timeout);
+        do {
+            scheduler.beginPoll();
+            ScreenImage frame = captureFrame();
+            List<Rectangle> dirty = detector.update(frame.getImage());
+            boolean changed = dirty == null || !dirty.isEmpty();
+            FrameMatcher.FrameMatch result = null;
+            if (changed) {
+                scheduler.matched();
+                result = FrameMatcher.findFirst(frame, getRegion(), patterns);
+            }
+            scheduler.endPoll(changed);
+            if (result != null && result.getIndex() == 0) {
+                scheduler.finish(true);
                 return;
-            } else if ( notWantedMatch != null ) {
+            } else if ( result != null ) {
+                scheduler.finish(true);
+                Match notWantedMatch = result.getMatch();
                 capture(notWantedMatch);
                 throw new ScreenOperationException(notWantedImage + " is founded! " + notWantedMatch);
-            } else {
-                Thread.sleep(500);
             }
-        }
-        capture(region);
+        } while (scheduler.sleep());
+        scheduler.finish(false);
+        capture(getRegion());
         throw new TimeoutException("Could not find " + wantedImage);
 
     }
@@ -897,8 +1487,10 @@ public class ScreenKeywords {
             + "\n\n Check if images exists in expectedImages or notExpectedImages list. "
             + "If image appears that is listed in notExpectedImages list or timeout happened, throw exception "
             + "If image appears that is listed in expectedImageslist return succesfully. "
+            + "\n\n All images are checked in parallel against the same screenshot in every polling cycle."
             + "\n\n @timeout: wait seconds"
-            + "\n\n @pollingInterval: time in seconds between screen checks"
+            + "\n\n @pollingInterval: longest time in seconds between screen checks,"
+            + " screen is checked more often at first and while it is changing"
             + "\n\n @expectedImages: list of expected images in screen"
             + "\n\n @notExpectedImages: list of not expected images in screen"
             + "\n\n Examples:"
@@ -909,31 +1501,40 @@ public class ScreenKeywords {
     public String waitForMultipleImages(int timeout, int pollingInterval,
                                         ArrayList<String> expectedImages, ArrayList<String> notExpectedImages) throws Exception {
 
-        Date beginTime = new Date();
-
-        while (System.currentTimeMillis() - beginTime.getTime() < timeout*1000) {
-
-            for (String wantedImage : expectedImages)
-            {
-                Match wantedMatch = region.exists(getPattern(wantedImage), 0);
-
-                if (wantedMatch != null) {
-                    return wantedImage;
-                }
+        // expected images have priority over not expected images, all of them are matched on the same frame
+        List<String> images = new ArrayList<String>(expectedImages);
+        images.addAll(notExpectedImages);
+        List<Pattern> patterns = new ArrayList<Pattern>();
+        for (String image : images) {
+            patterns.add(getPattern(image));
+        }
+
+        TileChangeDetector detector = new TileChangeDetector();
+        WaitScheduler scheduler = new WaitScheduler("waitForMultipleImages", timeout,
+                pollingInterval > 0 ? 1.0 / pollingInterval : settings().getWaitScanRate());
+        do {
+            scheduler.beginPoll();
+            ScreenImage frame = captureFrame();
+            List<Rectangle> dirty = detector.update(frame.getImage());
+            boolean changed = dirty == null || !dirty.isEmpty();
+            FrameMatcher.FrameMatch result = null;
+            if (changed) {
+                scheduler.matched();
+                result = FrameMatcher.findFirst(frame, getRegion(), patterns);
             }
-
-            for (String notWantedImage : notExpectedImages) {
-                Match notWantedMatch = region.exists(getPattern(notWantedImage), 0);
-
-                if (notWantedMatch != null) {
-                    capture();
-                    throw new ScreenOperationException(notWantedImage + " is found! " + notWantedMatch);
-                }
+            scheduler.endPoll(changed);
+
+            if (result != null && result.getIndex() < expectedImages.size()) {
+                scheduler.finish(true);
+                return images.get(result.getIndex());
+            } else if (result != null) {
+                scheduler.finish(true);
+                capture();
+                throw new ScreenOperationException(images.get(result.getIndex()) + " is found! " + result.getMatch());
             }
+        } while (scheduler.sleep());
 
-            Thread.sleep(pollingInterval * 1000);
-        }
-
+        scheduler.finish(false);
         capture();
         throw new TimeoutException("Could not find any images " + Arrays.toString(expectedImages.toArray()) +
                 Arrays.toString(notExpectedImages.toArray()));
@@ -946,18 +1547,7 @@ public class ScreenKeywords {
             + "\n | ${image_cnt}=  |  Image Count  | test.png  |")
     @ArgumentNames({"image"})
     public int imageCount(String image){
-        int count = 0;
-        Iterator<Match> matches;
-        try{
-            matches = region.findAll(getPattern(image));
-        }catch(FindFailed e){
-            return 0;
-        }
-        while(matches.hasNext()){
-            count++;
-            matches.next();
-        }
-        return count;
+        return FrameMatcher.findAll(captureFrame(), getRegion(), getPattern(image), null).size();
     }
 
     @RobotKeyword("Exists"
@@ -967,8 +1557,8 @@ public class ScreenKeywords {
             + "\n\n Examples:"
             + "\n | ${is_exist}=  | Exists | image.png | 0 |")
     @ArgumentNames({"image", "timeout="})
-    public Boolean exists(String image, int timeout) {
-        Match match = region.exists(getPattern(image), timeout);
+    public Boolean exists(String image, int timeout) throws InterruptedException {
+        Match match = waitForPattern(image, getPattern(image), timeout);
         if (match != null) {
             return true;
         }
@@ -986,8 +1576,7 @@ public class ScreenKeywords {
             + "\n | Change screen id | 1 |")
     @ArgumentNames({"screenId"})
     public void changeScreenId(int screenId) {
-        screen = new Screen(screenId);
-        region = new Region(screen);
+        session().setScreen(new Screen(screenId));
     }
 
     @RobotKeyword("Reset Roi"
@@ -996,13 +1585,13 @@ public class ScreenKeywords {
             + "\n | Reset roi |")
     @ArgumentNames({})
     public void resetRoi() {
-        region = new Region(screen);
+        session().setRegion(new Region(getScreen()));
     }
 
     @RobotKeyword("Get current screen id")
     @ArgumentNames({})
     public int getCurrentScreenId() {
-        return screen.getID();
+        return getScreen().getID();
     }
 
     @RobotKeyword("Get number of screens")
@@ -1018,10 +1607,10 @@ public class ScreenKeywords {
     @ArgumentNames({})
     public int[] getScreenCoordinates() {
         int[] coordinates = new int[4];
-        coordinates[0] = screen.getX();
-        coordinates[1] = screen.getY();
-        coordinates[2] = screen.getW();
-        coordinates[3] = screen.getH();
+        coordinates[0] = getScreen().getX();
+        coordinates[1] = getScreen().getY();
+        coordinates[2] = getScreen().getW();
+        coordinates[3] = getScreen().getH();
         return coordinates;
     }
 
@@ -1034,14 +1623,14 @@ public class ScreenKeywords {
     public int[] getImageCoordinates(String image,  ArrayList<Object> coordinates) throws Exception {
         Match match = null;
         if (coordinates.isEmpty()) {
-            match = ScreenKeywords.getScreen().find(getPattern(image));
+            match = findOnce(getScreen(), image);
         } else {
             int x = Integer.parseInt(coordinates.get(0).toString());
             int y = Integer.parseInt(coordinates.get(1).toString());
             int w = Integer.parseInt(coordinates.get(2).toString());
             int h = Integer.parseInt(coordinates.get(3).toString());
             Region region = new Region(x, y, w, h);
-            match = region.find(getPattern(image));
+            match = findOnce(region, image);
         }
 
         int [] image_coordinates = new int[4];
@@ -1065,7 +1654,7 @@ public class ScreenKeywords {
 
         Match match = null;
         try{
-            match = screen.find(getPattern(image));
+            match = findOnce(getScreen(), image);
             Region new_region = new Region(match);
             int height = new_region.h;
             int width = new_region.w;
@@ -1107,7 +1696,7 @@ public class ScreenKeywords {
 
     @RobotKeyword("Read text from region")
     @ArgumentNames({"reg"})
-    public String readTextFromRegion(ArrayList<Object> reg){
+    public String readTextFromRegion(ArrayList<Object> reg) throws InterruptedException, ScreenOperationException {
         System.out.println("reg variable: " + reg);
 
         int x = Integer.parseInt(reg.get(0).toString());
@@ -1117,7 +1706,11 @@ public class ScreenKeywords {
 
         Region region = new Region(x,y,w,h);
 
-        return region.text();
+        ScreenImage image = captureArea(region);
+        long ocrStart = PerformanceStatistics.start();
+        String text = OcrCache.getInstance().readText(image);
+        recordPhase(PerformanceStatistics.OCR, ocrStart);
+        return text;
     }
 
     @RobotKeyword("Set ROI"
@@ -1133,7 +1726,10 @@ public class ScreenKeywords {
         int y = Integer.parseInt(coordinates.get(1).toString());
         int w = Integer.parseInt(coordinates.get(2).toString());
         int h = Integer.parseInt(coordinates.get(3).toString());
-        region.setROI(x, y, w, h);
+        // a new region, keywords running concurrently keep the roi they started with
+        Region roi = new Region(getScreen());
+        roi.setROI(x, y, w, h);
+        session().setRegion(roi);
         if (timeout > 0) {
             this.highlightRoi(timeout);
         }
@@ -1151,7 +1747,7 @@ public class ScreenKeywords {
             + "\n | @{SelectedRegion}= | Select region |")
     @ArgumentNames({"message"})
     public String[] selectRegion(String message) {
-        Region region = screen.selectRegion(message);
+        Region region = getScreen().selectRegion(message);
         String imagePath = capture(region);
         String[] retval = new String[5];
         retval[0] = imagePath;
@@ -1174,7 +1770,15 @@ public class ScreenKeywords {
 
         try{
             Region _region = new Region(x,y,w,h);
-            _region.doubleClick();
+            if (!performInput("doubleClick " + _region)) {
+                return;
+            }
+            long inputStart = beginInput();
+            try {
+                _region.doubleClick();
+            } finally {
+                endInput(inputStart);
+            }
         }
         catch(Exception e){
             throw new Exception("error on doubleClickOnRegion, message: " + e);
@@ -1193,7 +1797,15 @@ public class ScreenKeywords {
 
         try{
             Region _region = new Region(x,y,w,h);
-            _region.click();
+            if (!performInput("click " + _region)) {
+                return;
+            }
+            long inputStart = beginInput();
+            try {
+                _region.click();
+            } finally {
+                endInput(inputStart);
+            }
         }
         catch(Exception e){
             throw new Exception("error on clickOnRegion, message: " + e);
@@ -1202,18 +1814,21 @@ public class ScreenKeywords {
 
     @RobotKeyword("Double Click On Match" +
                 "\n there's no offset to be configured" +
-                "\n works with the keyword Return Match From Region")
+                "\n works with the keyword Return Match From Region" +
+                "\n\n @match: match handle, or match as list of x, y, w, h and score")
     @ArgumentNames("match")
-    public void doubleClickOnMatch(ArrayList<Object> match) throws Exception{
-        int x = Integer.parseInt(match.get(0).toString());
-        int y = Integer.parseInt(match.get(1).toString());
-        int w = Integer.parseInt(match.get(2).toString());
-        int h = Integer.parseInt(match.get(3).toString());
-        double sc = Double.parseDouble(match.get(4).toString());
+    public void doubleClickOnMatch(Object match) throws Exception{
+        Match _el = matchFromArgument(match);
         try{
-            Region reg = new Region(x,y,w,h);
-            Match _el = new Match(reg, sc);
-            screen.doubleClick(_el);
+            if (!performInput("doubleClick " + _el)) {
+                return;
+            }
+            long inputStart = beginInput();
+            try {
+                getScreen().doubleClick(_el);
+            } finally {
+                endInput(inputStart);
+            }
         }catch (FindFailed e){
             capture();
             throw new FindFailed("not found  ");
@@ -1222,30 +1837,62 @@ public class ScreenKeywords {
 
     @RobotKeyword("Click On Match" +
                 "\n there's no offset to be configured" +
-                "\n works with the keyword Return Match From Region")
+                "\n works with the keyword Return Match From Region" +
+                "\n\n @match: match handle, or match as list of x, y, w, h and score")
     @ArgumentNames("match")
-    public void clickOnMatch(ArrayList<Object> match) throws Exception{
-        int x = Integer.parseInt(match.get(0).toString());
-        int y = Integer.parseInt(match.get(1).toString());
-        int w = Integer.parseInt(match.get(2).toString());
-        int h = Integer.parseInt(match.get(3).toString());
-        double sc = Double.parseDouble(match.get(4).toString());
+    public void clickOnMatch(Object match) throws Exception{
+        Match el = matchFromArgument(match);
         try{
-            Region reg = new Region(x,y,w,h);
-            Match el = new Match(reg, sc);
-            screen.click(el);
+            if (!performInput("click " + el)) {
+                return;
+            }
+            long inputStart = beginInput();
+            try {
+                getScreen().click(el);
+            } finally {
+                endInput(inputStart);
+            }
         }catch (FindFailed e){
             capture();
             throw new FindFailed("not found ");
         }
     }
 
+    /**
+     * Return stored match of a handle, or rebuild match from a list of x, y, w, h and score.
+     */
+    private Match matchFromArgument(Object match) {
+        if (MatchRegistry.isHandle(match)) {
+            return session().getMatchRegistry().get((String) match);
+        }
+        List<?> values;
+        if (match instanceof List) {
+            values = (List<?>) match;
+        } else if (match instanceof Object[]) {
+            values = Arrays.asList((Object[]) match);
+        } else {
+            throw new IllegalArgumentException("Match should be a match handle or a list, not " + match);
+        }
+        int x = Integer.parseInt(values.get(0).toString());
+        int y = Integer.parseInt(values.get(1).toString());
+        int w = Integer.parseInt(values.get(2).toString());
+        int h = Integer.parseInt(values.get(3).toString());
+        double sc = Double.parseDouble(values.get(4).toString());
+        return new Match(new Region(x,y,w,h), sc);
+    }
+
     @RobotKeyword("Return Match From Region" +
                 "\n expect a region (from keyword Get Extended Region From) and a target to be search for (an image.png)" +
-                "\n returns the target as a object (string), it can be used with Click On Match keywords")
+                "\n returns the target as a object (string), it can be used with Click On Match keywords" +
+                "\n\n @handle: if true, return a match handle like match:3f9c0a2b71d4e685 instead of the list of x, y, w, h and score." +
+                " The match is kept on server side with its score, and handles expire, see Set Match Handle Limits." +
+                " Return empty string if image is not found" +
+                "\n\n Examples:" +
+                "\n | ${match}= | Return Match From Region | ${region} | ok.png | handle=true |" +
+                "\n | Click On Match | ${match} |")
 
-    @ArgumentNames({"region", "target"})
-    public ArrayList<Object> returnMatchFromRegion(ArrayList<Object> region, String image)throws Exception{
+    @ArgumentNames({"region", "target", "handle=false"})
+    public Object returnMatchFromRegion(ArrayList<Object> region, String image, boolean handle)throws Exception{
 
         ArrayList<Object> ob = new ArrayList<Object>();
         int x = Integer.parseInt(region.get(0).toString());
@@ -1261,7 +1908,10 @@ public class ScreenKeywords {
         Region new_region = new Region(x,y,w,h);
 
         try{
-            Match el = new_region.find(image);
+            Match el = findOnce(new_region, image);
+            if (handle) {
+                return session().getMatchRegistry().put(el);
+            }
             ob.add(el.x);
             ob.add(el.y);
             ob.add(el.w);
@@ -1270,10 +1920,38 @@ public class ScreenKeywords {
             return ob;
         }
         catch (FindFailed e){
-            return ob;
+            return handle ? "" : ob;
         }
     }
 
+    @RobotKeywordOverload
+    public Object returnMatchFromRegion(ArrayList<Object> region, String image) throws Exception {
+        return returnMatchFromRegion(region, image, false);
+    }
+
+    @RobotKeyword("Get Match Handle" +
+                "\n Return a match handle of the last image found in the current session, like match:3f9c0a2b71d4e685." +
+                " The handle can be used with Click On Match and Double Click On Match of the same session without sending coordinates back." +
+                "\n\n Examples:" +
+                "\n | Wait Until Screen Contain | ok.png | 5 |" +
+                "\n | ${match}= | Get Match Handle |" +
+                "\n | Click On Match | ${match} |")
+    @ArgumentNames({})
+    public String getMatchHandle() throws ScreenOperationException {
+        Match match = session().getLastMatch();
+        if (match == null) {
+            throw new ScreenOperationException("No image was found in this session yet");
+        }
+        return session().getMatchRegistry().put(match);
+    }
+
+    @RobotKeyword("Release Match Handle" +
+                "\n Remove match handle from server, return true if the handle was still known.")
+    @ArgumentNames("match")
+    public boolean releaseMatchHandle(String match) {
+        return session().getMatchRegistry().release(match);
+    }
+
     @RobotKeyword("From Region Jump To" +
                   "\n Create a region and translate it related to the given region, the created region will have the exactly same height and width as the passed one " +
                   "\n ${jumps} = number of 'jumps' to move, like on a chess game, jumps will be the number of squares a piece moves " +
@@ -1392,7 +2070,7 @@ public class ScreenKeywords {
     public int[] getExtendedRegionFromImage(String image, String direction, String number_of_times_to_repeat) throws Exception {
             try{
                 int number = Integer.parseInt(number_of_times_to_repeat);
-                Match match = screen.find(image);
+                Match match = findOnce(getScreen(), image);
                 Region new_region = new Region(match);
 
                 Region r = null;
@@ -1436,16 +2114,23 @@ public class ScreenKeywords {
     }
 
     private static String saveImage(ScreenImage image, String name) {
-        String imagePath;
-        if (name == null || name.equals("")) {
-            imagePath = image.save(CaptureFolder.getInstance().getCaptureFolder());
-        } else {
-            imagePath = image.save(CaptureFolder.getInstance().getCaptureFolder(), name);
+        long saveStart = PerformanceStatistics.start();
+        // file is written in background, path is logged before it is written,
+        // an identical capture which is already stored is logged instead of writing it again
+        File file;
+        try {
+            file = CaptureStore.getInstance().save(session().getCaptureFolder().getCaptureFolder(), name,
+                    image.getImage(), session().getCapturePolicy());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.out.println("*WARN* Interrupted while saving capture");
+            return null;
         }
+        String imagePath = file.getAbsolutePath();
         System.out.println("*DEBUG* Saved path: " + imagePath);
-        File file = new File(imagePath);
         String fileName = file.getName();
-        System.out.println("*HTML* <img src='" + CaptureFolder.getInstance().getSubFolder() + "/" + fileName + "'/>");
+        System.out.println("*HTML* <img src='" + session().getCaptureFolder().getSubFolder() + "/" + fileName + "'/>");
+        recordPhase(PerformanceStatistics.SAVE, saveStart);
         return imagePath;
     }
 }
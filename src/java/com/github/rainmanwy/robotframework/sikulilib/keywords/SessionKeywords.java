@@ -0,0 +1,92 @@
+package com.github.rainmanwy.robotframework.sikulilib.keywords;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.robotframework.javalib.annotation.ArgumentNames;
+import org.robotframework.javalib.annotation.RobotKeyword;
+import org.robotframework.javalib.annotation.RobotKeywordOverload;
+import org.robotframework.javalib.annotation.RobotKeywords;
+
+import com.github.rainmanwy.robotframework.sikulilib.SikuliLibrary;
+import com.github.rainmanwy.robotframework.sikulilib.utils.BinaryTransport;
+import com.github.rainmanwy.robotframework.sikulilib.utils.SessionContext;
+
+/**
+ * Sessions let several clients share one server, each with its own ROI, timeout, similarity,
+ * capture folder and matches. Clients could also run keywords over the binary transport instead of XML-RPC.
+ */
+
+@RobotKeywords
+public class SessionKeywords {
+
+    @RobotKeyword("Open session"
+            + "\n Open a session with its own screen state (screen, ROI, timeout, min similarity, capture folder,"
+            + " highlights and matches), return the path where the session is served."
+            + "\n Connect a Remote library to http://host:port<path> to run keywords in the session,"
+            + " SikuliLibrary does this itself when it is imported with mode SESSION."
+            + "\n\n @outputFolder: captures of the session are stored in its sikuli_captured folder"
+            + "\n\n @screenId: screen of the session, -1 (default) is the primary screen"
+            + "\n\n Examples:"
+            + "\n | ${path}= | Open Session | ${OUTPUT_DIR} |"
+            + "\n | ${path}= | Open Session | ${OUTPUT_DIR} | 1 |")
+    @ArgumentNames({"outputFolder=", "screenId=-1"})
+    public String openSession(String outputFolder, int screenId) {
+        return SikuliLibrary.openSession(outputFolder, screenId);
+    }
+
+    @RobotKeywordOverload
+    public String openSession(String outputFolder) {
+        return openSession(outputFolder, -1);
+    }
+
+    @RobotKeywordOverload
+    public String openSession() {
+        return openSession("", -1);
+    }
+
+    @RobotKeyword("Close session"
+            + "\n Close session with given id or path, keywords of the session fail afterwards."
+            + "\n Without id the session running the keyword is closed."
+            + " The default session (library served at \"/\") can not be closed, closing it fails."
+            + "\n\n Examples:"
+            + "\n | Close Session | ${path} |"
+            + "\n | Close Session |")
+    @ArgumentNames({"session="})
+    public void closeSession(String session) {
+        if (session == null || session.trim().isEmpty()) {
+            session = SessionContext.current().getId();
+        }
+        SikuliLibrary.closeSession(session);
+    }
+
+    @RobotKeywordOverload
+    public void closeSession() {
+        closeSession(SessionContext.current().getId());
+    }
+
+    @RobotKeyword("Start binary transport"
+            + "\n Start the binary transport on a free loopback port (once), return the port."
+            + "\n Keywords could then be run over a persistent socket with length prefixed frames instead of XML-RPC,"
+            + " SikuliLibrary does this itself when it is imported with transport BINARY."
+            + "\n\n Examples:"
+            + "\n | ${port}= | Start Binary Transport |")
+    @ArgumentNames({})
+    public int startBinaryTransport() throws IOException {
+        return BinaryTransport.getInstance().start();
+    }
+
+    @RobotKeyword("Get session id"
+            + "\n Return id of the session running the keyword, \"default\" for the library served at \"/\"")
+    @ArgumentNames({})
+    public String getSessionId() {
+        return SessionContext.current().getId();
+    }
+
+    @RobotKeyword("Get session ids"
+            + "\n Return ids of all open sessions")
+    @ArgumentNames({})
+    public List<String> getSessionIds() {
+        return SikuliLibrary.getSessionIds();
+    }
+}
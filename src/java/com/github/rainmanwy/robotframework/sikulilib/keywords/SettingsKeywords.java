@@ -2,9 +2,22 @@ package com.github.rainmanwy.robotframework.sikulilib.keywords;
 
 import org.robotframework.javalib.annotation.ArgumentNames;
 import org.robotframework.javalib.annotation.RobotKeyword;
+import org.robotframework.javalib.annotation.RobotKeywordOverload;
 import org.robotframework.javalib.annotation.RobotKeywords;
 import org.sikuli.basics.Settings;
 
+import java.io.IOException;
+
+import com.github.rainmanwy.robotframework.sikulilib.utils.CapturePolicy;
+import com.github.rainmanwy.robotframework.sikulilib.utils.CaptureStore;
+import com.github.rainmanwy.robotframework.sikulilib.utils.CaptureWriter;
+import com.github.rainmanwy.robotframework.sikulilib.utils.LiveScreenSource;
+import com.github.rainmanwy.robotframework.sikulilib.utils.LocationHints;
+import com.github.rainmanwy.robotframework.sikulilib.utils.OcrEnginePool;
+import com.github.rainmanwy.robotframework.sikulilib.utils.PatternCache;
+import com.github.rainmanwy.robotframework.sikulilib.utils.ReplayScreenSource;
+import com.github.rainmanwy.robotframework.sikulilib.utils.SessionContext;
+
 
 /**
  * Created by Wang Yang on 2016/5/5.
@@ -17,13 +30,17 @@ import org.sikuli.basics.Settings;
 public class SettingsKeywords {
 
     @RobotKeyword("Set min similarity (accuracy of matching elements)."
-            + "\n\nminSimilarity can be a decimal number between 0 and 1"
+            + "\n\nminSimilarity can be a decimal number between 0 and 1, it applies to the current session only"
             + "\n\nExample:"
             + "\n\n| Set Min Similarity | 0.85 |")
     @ArgumentNames({"minSimilarity"})
     public String setMinSimilarity(String minSimilarity) {
-        double prevMinSimilarity = Settings.MinSimilarity;
-        Settings.MinSimilarity = Double.parseDouble(minSimilarity);
+        SessionContext session = SessionContext.current();
+        double prevMinSimilarity = session.getSettings().getMinSimilarity();
+        session.setMinSimilarity(Double.parseDouble(minSimilarity));
+        if (isDefaultSession(session)) {
+            Settings.MinSimilarity = Double.parseDouble(minSimilarity);
+        }
         return Double.toString(prevMinSimilarity);
     }
 
@@ -39,12 +56,19 @@ public class SettingsKeywords {
 				+ "\n\nSet OCR language"
                 + "\nThree letters parameter"
 				+ "\nDefault : eng for English language"
+				+ "\nApplies to the current session only"
+				+ "\nOCR engines for the language are prepared in background, so the first text read does not wait for them"
 				+ "\nExamples:"
                 + "\n| Set OCR Language | eng |"
 				+ "\n| Set OCR Language | fra |")
     @ArgumentNames({"ocrTextLanguage"})
     public void setOcrLanguage(String ocrTextLanguage) {
-        Settings.OcrLanguage = ocrTextLanguage;
+        SessionContext session = SessionContext.current();
+        session.setOcrLanguage(ocrTextLanguage);
+        if (isDefaultSession(session)) {
+            Settings.OcrLanguage = ocrTextLanguage;
+        }
+        OcrEnginePool.getInstance().prewarm(ocrTextLanguage);
     }
 
     @RobotKeyword("Set show actions")
@@ -53,10 +77,11 @@ public class SettingsKeywords {
         Settings.setShowActions(showActions);
     }
 
-    @RobotKeyword("Set move mouse delay")
+    @RobotKeyword("Set move mouse delay"
+            + "\n Applies to the current session only.")
     @ArgumentNames({"delay"})
     public void setMoveMouseDelay(float delay) {
-        Settings.MoveMouseDelay = delay;
+        SessionContext.current().setMoveMouseDelay(delay);
     }
 
     @RobotKeyword("Set slow motion delay"
@@ -67,10 +92,38 @@ public class SettingsKeywords {
     }
 
     @RobotKeyword("Set wait scan rate"
-            + "\n Specify the number of times actual search operations are performed per second while waiting for a pattern to appear or vanish.")
+            + "\n Specify the number of times actual search operations are performed per second while waiting for a pattern to appear or vanish."
+            + " Waits poll faster at first and while the screen changes, this is the slowest rate they back off to."
+            + " Applies to the current session only.")
     @ArgumentNames({"delay"})
     public void setWaitScanRate(float scanRate) {
-        Settings.WaitScanRate = scanRate;
+        SessionContext session = SessionContext.current();
+        session.setWaitScanRate(scanRate);
+        if (isDefaultSession(session)) {
+            Settings.WaitScanRate = scanRate;
+        }
+    }
+
+    @RobotKeyword("Set change threshold"
+            + "\n Set fraction of pixels (between 0 and 1) which must differ before a region counts as changed,"
+            + " used by Click Region while waiting for change. 0 means any changed pixel, default is 0.01."
+            + " Applies to the current session only."
+            + "\n\nExample:"
+            + "\n\n| Set Change Threshold | 0.05 |")
+    @ArgumentNames({"threshold"})
+    public void setChangeThreshold(double threshold) {
+        if (threshold < 0 || threshold > 1) {
+            throw new IllegalArgumentException("Change threshold should be between 0 and 1, not " + threshold);
+        }
+        SessionContext.current().setChangeThreshold(threshold);
+    }
+
+    /**
+     * Settings of the default session are also copied to the SikuliX global settings, which SikuliX reads itself,
+     * other sessions only change their own snapshot.
+     */
+    private static boolean isDefaultSession(SessionContext session) {
+        return session == SessionContext.getDefault();
     }
 
     @RobotKeyword("Set Always Resize"
@@ -82,4 +135,241 @@ public class SettingsKeywords {
     public void setAlwaysResize(float resize) {
         Settings.AlwaysResize = resize;
     }
+
+    @RobotKeyword("Set Pyramid Matching"
+            + "\nSet coarse to fine matching of the current session."
+            + "\nA decimal value greater 0 and less than 1 switches coarse to fine matching on, 0 or 1 switches it off (default)."
+            + "\nCandidates are first searched on screen and image copies downscaled by the given factor, and then confirmed"
+            + " at full resolution in small windows around each candidate."
+            + "\n\nSpeed: the coarse search costs about factor^4 of a full search, e.g. 0.5 makes it about 16 times cheaper,"
+            + " which matters most for large regions on big or multiple screens."
+            + "\n\nAccuracy: thin lines and small text could vanish in the downscaled copies, so such images may be missed."
+            + " Images smaller than 8 pixels after downscale are always matched at full resolution, and only the 5 best"
+            + " candidates are confirmed. 0.5 is a good start, smaller factors are faster but less reliable."
+            + "\nUnlike Set Always Resize, which only rescales the image, this cuts the cost of searching the screen."
+            + "\n\nExample:"
+            + "\n\n| Set Pyramid Matching | 0.5 |")
+    @ArgumentNames({"scale"})
+    public void setPyramidMatching(float scale) {
+        SessionContext.current().setPyramidScale(scale);
+    }
+
+    @RobotKeyword("Set frame grabber"
+            + "\n Capture the active screen of the current session in background with given frames per second,"
+            + " 0 switches it off (default). Every session has its own frame grabber, which follows Change Screen Id."
+            + "\n Find, wait and exists keywords match against the newest captured frame instead of capturing the screen,"
+            + " if the newest frame is older than maxFrameAge (milliseconds), screen is captured again."
+            + "\n\nExample:"
+            + "\n\n| Set Frame Grabber | 10 |"
+            + "\n| Set Frame Grabber | 5 | 200 |"
+            + "\n| Set Frame Grabber | 0 |")
+    @ArgumentNames({"fps", "maxFrameAge=500"})
+    public void setFrameGrabber(float fps, int maxFrameAge) {
+        SessionContext session = SessionContext.current();
+        session.getFrameGrabber().start(session.getScreen(), fps, maxFrameAge);
+    }
+
+    @RobotKeywordOverload
+    public void setFrameGrabber(float fps) {
+        setFrameGrabber(fps, 500);
+    }
+
+    @RobotKeyword("Set screen source"
+            + "\n Select where screen content comes from."
+            + "\n\n @source: LIVE (default) captures the real screen, RECORD captures the real screen and stores every"
+            + " frame captured to search or read (as lossless png, screenshots are not recorded) in path,"
+            + " REPLAY serves frames from path instead of the screen"
+            + "\n\n @path: for REPLAY a png file, a folder of png files shown in name order, or a recorded folder"
+            + " (its session.txt lists \"millis file x y\" per frame)"
+            + "\n\n @frameInterval: milliseconds each png of a folder is shown, 0 steps to the next png on every search or read (screenshots show the current png)"
+            + "\n\n With REPLAY mouse and keyboard actions are logged but not performed, so waits and matching can be run"
+            + " and measured with prepared frames."
+            + "\n\nExample:"
+            + "\n\n| Set Screen Source | REPLAY | ${CURDIR}/frames | 200 |"
+            + "\n| Set Screen Source | RECORD | ${OUTPUT_DIR}/session |"
+            + "\n| Set Screen Source | LIVE |")
+    @ArgumentNames({"source", "path=", "frameInterval=0"})
+    public void setScreenSource(String source, String path, int frameInterval) throws IOException {
+        String type = source.toUpperCase();
+        if ("LIVE".equals(type)) {
+            ScreenKeywords.setScreenSource(new LiveScreenSource());
+        } else if ("RECORD".equals(type)) {
+            ScreenKeywords.setScreenSource(new LiveScreenSource(path));
+        } else if ("REPLAY".equals(type)) {
+            ScreenKeywords.setScreenSource(new ReplayScreenSource(path, frameInterval));
+        } else {
+            throw new IllegalArgumentException("Screen source should be LIVE, RECORD or REPLAY, not " + source);
+        }
+    }
+
+    @RobotKeywordOverload
+    public void setScreenSource(String source, String path) throws IOException {
+        setScreenSource(source, path, 0);
+    }
+
+    @RobotKeywordOverload
+    public void setScreenSource(String source) throws IOException {
+        setScreenSource(source, "", 0);
+    }
+
+    @RobotKeyword("Set pattern cache size"
+            + "\n Set the maximum size (megabytes) of decoded images kept in memory, least recently used images are evicted first."
+            + "\n Default is 64, 0 disables the cache."
+            + "\n\nExample:"
+            + "\n\n| Set Pattern Cache Size | 128 |")
+    @ArgumentNames({"megabytes"})
+    public void setPatternCacheSize(int megabytes) {
+        PatternCache.getInstance().setMaxBytes(megabytes * 1024L * 1024L);
+    }
+
+    @RobotKeyword("Set capture queue"
+            + "\n Captured images are written to disk in background, set the size of the pending queue and"
+            + " what happens when it is full."
+            + "\n\n @size: maximum number of pending captures, default is 16"
+            + "\n\n @policy: BLOCK (default) waits for space in the queue, DROP_OLDEST discards the oldest pending capture,"
+            + " THUMBNAIL downscales the capture before it is queued"
+            + "\n\nExample:"
+            + "\n\n| Set Capture Queue | 32 | DROP_OLDEST |")
+    @ArgumentNames({"size", "policy=BLOCK"})
+    public void setCaptureQueue(int size, String policy) {
+        CaptureWriter.getInstance().setQueue(size, CaptureWriter.Policy.valueOf(policy.toUpperCase()));
+    }
+
+    @RobotKeywordOverload
+    public void setCaptureQueue(int size) {
+        setCaptureQueue(size, CaptureWriter.Policy.BLOCK.name());
+    }
+
+    @RobotKeyword("Flush captures"
+            + "\n Wait until all pending captures are written to disk."
+            + "\n The library calls it before the remote server is stopped and when a session is closed."
+            + "\n\nExample:"
+            + "\n\n| Flush Captures |")
+    public void flushCaptures() throws InterruptedException {
+        CaptureWriter.getInstance().flush();
+    }
+
+    @RobotKeyword("Set capture policy"
+            + "\n Set how captured images of the current session are stored."
+            + "\n\n @format: PNG (default) or JPEG"
+            + "\n\n @quality: JPEG quality between 0 and 1, default is 0.8"
+            + "\n\n @scale: downscale factor greater than 0 and at most 1, default is 1 (original size)"
+            + "\n\n @maxDimension: captures are downscaled further until their larger side fits, 0 (default) is unlimited"
+            + "\n\n @cropToMatch: true (default) captures only the match plus margin when an image was matched,"
+            + " false captures the whole roi"
+            + "\n\n @margin: pixels captured around a match on each side, default is 0"
+            + "\n\n Images are resized and encoded in background, JPEG and downscaled captures are much smaller and"
+            + " faster to write than full size PNG on big screens."
+            + "\n\nExample:"
+            + "\n\n| Set Capture Policy | JPEG | 0.7 | maxDimension=1280 |"
+            + "\n| Set Capture Policy | PNG | cropToMatch=true | margin=40 |")
+    @ArgumentNames({"format=PNG", "quality=0.8", "scale=1.0", "maxDimension=0", "cropToMatch=true", "margin=0"})
+    public String setCapturePolicy(String format, float quality, double scale, int maxDimension, boolean cropToMatch,
+                                   int margin) {
+        SessionContext session = SessionContext.current();
+        String previous = session.getCapturePolicy().toString();
+        session.setCapturePolicy(new CapturePolicy(CapturePolicy.Format.valueOf(format.toUpperCase()), quality, scale,
+                maxDimension, cropToMatch, margin));
+        return previous;
+    }
+
+    @RobotKeywordOverload
+    public String setCapturePolicy(String format, float quality, double scale, int maxDimension, boolean cropToMatch) {
+        return setCapturePolicy(format, quality, scale, maxDimension, cropToMatch, 0);
+    }
+
+    @RobotKeywordOverload
+    public String setCapturePolicy(String format, float quality, double scale, int maxDimension) {
+        return setCapturePolicy(format, quality, scale, maxDimension, true, 0);
+    }
+
+    @RobotKeywordOverload
+    public String setCapturePolicy(String format, float quality, double scale) {
+        return setCapturePolicy(format, quality, scale, 0, true, 0);
+    }
+
+    @RobotKeywordOverload
+    public String setCapturePolicy(String format, float quality) {
+        return setCapturePolicy(format, quality, 1.0, 0, true, 0);
+    }
+
+    @RobotKeywordOverload
+    public String setCapturePolicy(String format) {
+        return setCapturePolicy(format, 0.8f, 1.0, 0, true, 0);
+    }
+
+    @RobotKeywordOverload
+    public String setCapturePolicy() {
+        return setCapturePolicy("PNG", 0.8f, 1.0, 0, true, 0);
+    }
+
+    @RobotKeyword("Set match handle limits"
+            + "\n Set how many match handles of the current session are kept on server, and how long an unused handle is kept."
+            + "\n\n @capacity: maximum number of handles, least recently used handles are removed first, default is 256"
+            + "\n\n @ttl: seconds a handle is kept after it was last used, default is 300"
+            + "\n\nExample:"
+            + "\n\n| Set Match Handle Limits | 64 | 60 |")
+    @ArgumentNames({"capacity=256", "ttl=300"})
+    public void setMatchHandleLimits(int capacity, double ttl) {
+        SessionContext.current().getMatchRegistry().setLimits(capacity, (long) (ttl * 1000));
+    }
+
+    @RobotKeywordOverload
+    public void setMatchHandleLimits(int capacity) {
+        setMatchHandleLimits(capacity, 300);
+    }
+
+    @RobotKeyword("Set capture budget"
+            + "\n Limit disk space and number of captures stored by this server in the capture folder."
+            + " When a limit is exceeded, oldest captures are deleted first."
+            + "\n\n @maxMegabytes: maximum size of stored captures in megabytes, 0 (default) is unlimited"
+            + "\n\n @maxFiles: maximum number of stored captures, 0 (default) is unlimited"
+            + "\n\n Captures saved by failed keywords are kept, so logs of failures always show their screenshots."
+            + " Usage is tracked in memory, files which were in the capture folder before the server started are not counted."
+            + "\n\nExample:"
+            + "\n\n| Set Capture Budget | 200 |"
+            + "\n| Set Capture Budget | 0 | 500 |")
+    @ArgumentNames({"maxMegabytes=0", "maxFiles=0"})
+    public void setCaptureBudget(double maxMegabytes, int maxFiles) {
+        CaptureStore.getInstance().setBudget((long) (maxMegabytes * 1024 * 1024), maxFiles);
+    }
+
+    @RobotKeywordOverload
+    public void setCaptureBudget(double maxMegabytes) {
+        setCaptureBudget(maxMegabytes, 0);
+    }
+
+    @RobotKeywordOverload
+    public void setCaptureBudget() {
+        setCaptureBudget(0, 0);
+    }
+
+    @RobotKeyword("Set preprocessing manifest"
+            + "\n Load preprocessing of images from a properties file, every line is an image name and its preprocessing."
+            + " Preprocessing can also be given in brackets after the image name of a locator, like"
+            + " login.png[gray,scale=0.5] = 0.9, which takes precedence over the manifest."
+            + "\n\n Preprocessing is a comma separated list of:"
+            + "\n - gray: match luminance only, much faster than matching colors"
+            + "\n - scale=f: downscale image and screen by f (greater than 0, at most 1)"
+            + "\n - crop=x:y:w:h: match only this part of the image, the match covers this part"
+            + "\n - threshold=t: match black and white, luminance of at least t (0 to 255) is white"
+            + "\n\n Preprocessed images are cached, and screen is preprocessed once per capture for all images with the same"
+            + " preprocessing. Pyramid matching does not apply to preprocessed images."
+            + "\n\nExample:"
+            + "\n\n| Set Preprocessing Manifest | ${CURDIR}/preprocessing.properties |"
+            + "\n| Click | login.png[gray] |")
+    @ArgumentNames({"path"})
+    public void setPreprocessingManifest(String path) throws IOException {
+        PatternCache.getInstance().loadManifest(path);
+    }
+
+    @RobotKeyword("Set location hints file"
+            + "\n Load locations where images were matched in previous runs from file, and store them in the same file"
+            + " when server is stopped. Images are searched around these locations first."
+            + "\n\nExample:"
+            + "\n\n| Set Location Hints File | ${CURDIR}/location_hints.properties |")
+    @ArgumentNames({"path"})
+    public void setLocationHintsFile(String path) throws IOException {
+        LocationHints.getInstance().setFile(path);
+    }
 }
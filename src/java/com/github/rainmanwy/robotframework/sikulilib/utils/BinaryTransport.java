@@ -0,0 +1,336 @@
+package com.github.rainmanwy.robotframework.sikulilib.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.robotframework.javalib.library.RobotFrameworkDynamicAPI;
+
+/**
+ * Run keywords over persistent loopback connections with compact length prefixed frames, next to XML-RPC.
+ *
+ * Every frame is a 4 byte big endian length and a value. A request is the list [path, keyword, args, kwargs],
+ * path selects the library ("/" or a session path), the response is a map with status, return, output, error
+ * and traceback like the XML-RPC remote protocol.
+ * Values are tagged: N null, T true, F false, I 8 byte integer, D 8 byte double, S 4 byte length and UTF-8,
+ * L 4 byte count and values, M 4 byte count and key value pairs.
+ * Output printed by a keyword is collected per thread and returned with its result.
+ */
+public class BinaryTransport implements Runnable {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int MAX_FRAME = 64 * 1024 * 1024;
+    private static BinaryTransport MYSELF = null;
+
+    private final Map<String, RobotFrameworkDynamicAPI> libraries = new ConcurrentHashMap<String, RobotFrameworkDynamicAPI>();
+    private ServerSocket serverSocket = null;
+
+    private BinaryTransport() {}
+
+    public static synchronized BinaryTransport getInstance() {
+        if (MYSELF == null) {
+            MYSELF = new BinaryTransport();
+        }
+        return MYSELF;
+    }
+
+    public void putLibrary(String path, RobotFrameworkDynamicAPI library) {
+        libraries.put(path, library);
+    }
+
+    public void removeLibrary(String path) {
+        libraries.remove(path);
+    }
+
+    /**
+     * Start listening on a free loopback port if not started yet, return the port.
+     */
+    public synchronized int start() throws IOException {
+        if (serverSocket == null) {
+            ThreadOutput.install();
+            serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            Thread thread = new Thread(this, "sikuli-binary-transport");
+            thread.setDaemon(true);
+            thread.start();
+            System.out.println("*INFO* Binary transport listening on port " + serverSocket.getLocalPort());
+        }
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            final Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                System.out.println("*WARN* Binary transport stopped: " + e.getMessage());
+                return;
+            }
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    serve(socket);
+                }
+            }, "sikuli-binary-connection");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private void serve(Socket socket) {
+        try {
+            socket.setTcpNoDelay(true);
+            DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            while (true) {
+                int length;
+                try {
+                    length = input.readInt();
+                } catch (EOFException e) {
+                    return;
+                }
+                if (length < 0 || length > MAX_FRAME) {
+                    throw new IOException("Invalid frame length " + length);
+                }
+                byte[] frame = new byte[length];
+                input.readFully(frame);
+                Object request = decode(new DataInputStream(new ByteArrayInputStream(frame)));
+                byte[] response = encode(execute(request));
+                output.writeInt(response.length);
+                output.write(response);
+                output.flush();
+            }
+        } catch (IOException e) {
+            System.out.println("*WARN* Binary transport connection failed: " + e.getMessage());
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // connection is gone anyway
+            }
+        }
+    }
+
+    private Map<String, Object> execute(Object request) {
+        Map<String, Object> result = new HashMap<String, Object>();
+        ByteArrayOutputStream captured = ThreadOutput.begin();
+        try {
+            if (!(request instanceof List) || ((List<?>) request).size() < 3) {
+                throw new IllegalArgumentException("Request should be [path, keyword, args, kwargs]");
+            }
+            List<?> call = (List<?>) request;
+            String path = String.valueOf(call.get(0));
+            RobotFrameworkDynamicAPI library = libraries.get(path);
+            if (library == null) {
+                throw new IllegalArgumentException("No library at path " + path);
+            }
+            String keyword = String.valueOf(call.get(1));
+            List<?> args = call.get(2) == null ? new ArrayList<Object>() : (List<?>) call.get(2);
+            Map<?, ?> kwargs = call.size() > 3 ? (Map<?, ?>) call.get(3) : null;
+            Object value = kwargs == null || kwargs.isEmpty()
+                    ? library.runKeyword(keyword, args) : library.runKeyword(keyword, args, kwargs);
+            result.put("status", "PASS");
+            result.put("return", value == null ? "" : value);
+        } catch (Throwable e) {
+            Throwable cause = unwrap(e);
+            result.put("status", "FAIL");
+            result.put("error", cause.getMessage() == null || cause.getMessage().isEmpty()
+                    ? cause.getClass().getSimpleName() : cause.getMessage());
+            StringWriter traceback = new StringWriter();
+            cause.printStackTrace(new PrintWriter(traceback));
+            result.put("traceback", traceback.toString());
+        } finally {
+            ThreadOutput.end();
+        }
+        result.put("output", new String(captured.toByteArray(), Charset.defaultCharset()));
+        return result;
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        Throwable cause = e;
+        while (cause.getCause() != null && (cause instanceof InvocationTargetException
+                || (cause.getClass() == RuntimeException.class && cause.getCause().toString().equals(cause.getMessage())))) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    public static byte[] encode(Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        encode(value, output);
+        output.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void encode(Object value, DataOutputStream output) throws IOException {
+        if (value == null) {
+            output.writeByte('N');
+        } else if (value instanceof Boolean) {
+            output.writeByte((Boolean) value ? 'T' : 'F');
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            output.writeByte('I');
+            output.writeLong(((Number) value).longValue());
+        } else if (value instanceof Number) {
+            output.writeByte('D');
+            output.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            output.writeByte('M');
+            output.writeInt(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                encode(String.valueOf(entry.getKey()), output);
+                encode(entry.getValue(), output);
+            }
+        } else if (value instanceof Collection) {
+            Collection<?> collection = (Collection<?>) value;
+            output.writeByte('L');
+            output.writeInt(collection.size());
+            for (Object item : collection) {
+                encode(item, output);
+            }
+        } else if (value.getClass().isArray()) {
+            int length = Array.getLength(value);
+            output.writeByte('L');
+            output.writeInt(length);
+            for (int i = 0; i < length; i++) {
+                encode(Array.get(value, i), output);
+            }
+        } else {
+            byte[] text = value.toString().getBytes(UTF8);
+            output.writeByte('S');
+            output.writeInt(text.length);
+            output.write(text);
+        }
+    }
+
+    public static Object decode(DataInputStream input) throws IOException {
+        int tag = input.readUnsignedByte();
+        switch (tag) {
+            case 'N':
+                return null;
+            case 'T':
+                return Boolean.TRUE;
+            case 'F':
+                return Boolean.FALSE;
+            case 'I':
+                long number = input.readLong();
+                if (number >= Integer.MIN_VALUE && number <= Integer.MAX_VALUE) {
+                    return (int) number;
+                }
+                return number;
+            case 'D':
+                return input.readDouble();
+            case 'S':
+                byte[] text = new byte[checkLength(input.readInt())];
+                input.readFully(text);
+                return new String(text, UTF8);
+            case 'L':
+                int count = checkLength(input.readInt());
+                List<Object> list = new ArrayList<Object>(Math.min(count, 1024));
+                for (int i = 0; i < count; i++) {
+                    list.add(decode(input));
+                }
+                return list;
+            case 'M':
+                int size = checkLength(input.readInt());
+                Map<String, Object> map = new LinkedHashMap<String, Object>();
+                for (int i = 0; i < size; i++) {
+                    map.put(String.valueOf(decode(input)), decode(input));
+                }
+                return map;
+            default:
+                throw new IOException("Unknown value tag " + tag);
+        }
+    }
+
+    private static int checkLength(int length) throws IOException {
+        if (length < 0 || length > MAX_FRAME) {
+            throw new IOException("Invalid value length " + length);
+        }
+        return length;
+    }
+
+    /**
+     * Standard output which goes to a buffer of the current thread while it runs a keyword over this transport,
+     * and to the original output otherwise.
+     */
+    private static class ThreadOutput extends OutputStream {
+
+        private static final ThreadLocal<ByteArrayOutputStream> BUFFER = new ThreadLocal<ByteArrayOutputStream>();
+        private static boolean installed = false;
+
+        private final PrintStream original;
+
+        ThreadOutput(PrintStream original) {
+            this.original = original;
+        }
+
+        static synchronized void install() {
+            if (!installed) {
+                System.setOut(new PrintStream(new ThreadOutput(System.out), true));
+                installed = true;
+            }
+        }
+
+        static ByteArrayOutputStream begin() {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            BUFFER.set(buffer);
+            return buffer;
+        }
+
+        static void end() {
+            BUFFER.remove();
+        }
+
+        @Override
+        public void write(int b) {
+            ByteArrayOutputStream buffer = BUFFER.get();
+            if (buffer != null) {
+                buffer.write(b);
+            } else {
+                original.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ByteArrayOutputStream buffer = BUFFER.get();
+            if (buffer != null) {
+                buffer.write(b, off, len);
+            } else {
+                original.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() {
+            if (BUFFER.get() == null) {
+                original.flush();
+            }
+        }
+    }
+}
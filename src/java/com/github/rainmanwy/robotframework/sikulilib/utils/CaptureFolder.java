@@ -8,29 +8,30 @@ import java.io.File;
 
 public class CaptureFolder {
 
-    private String captureFolder = ".";
+    private volatile String captureFolder = ".";
     private static String SUB_FOLDER = "sikuli_captured";
     private static CaptureFolder MYSELF = null;
-    private boolean setted = false;
+    private volatile boolean setted = false;
 
     public Boolean isCaptureMatchedImage = true;
 
-    private CaptureFolder() {}
+    public CaptureFolder() {}
 
-    public static CaptureFolder getInstance() {
+    public static synchronized CaptureFolder getInstance() {
         if (MYSELF == null) {
             MYSELF = new CaptureFolder();
         }
         return MYSELF;
     }
 
-    public void setCaptureFolder(String captureFolder) {
-        this.captureFolder = captureFolder + "/" + CaptureFolder.SUB_FOLDER;
-        setted = true;
-        File file = new File(this.captureFolder);
+    public synchronized void setCaptureFolder(String captureFolder) {
+        String folder = captureFolder + "/" + CaptureFolder.SUB_FOLDER;
+        File file = new File(folder);
         if (!file.exists()) {
             file.mkdirs();
         }
+        this.captureFolder = folder;
+        setted = true;
     }
 
     public String getCaptureFolder() {
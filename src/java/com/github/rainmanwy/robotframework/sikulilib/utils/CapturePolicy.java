@@ -0,0 +1,151 @@
+package com.github.rainmanwy.robotframework.sikulilib.utils;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * How captured images are stored: format (PNG, or JPEG with quality), downscale, and which area of a match is captured.
+ *
+ * Images are downscaled by scale, and further if their larger side exceeds max dimension (0 is unlimited).
+ * Captures of a match are cropped to the match plus margin pixels on each side,
+ * without crop to match the whole roi is captured instead.
+ */
+public final class CapturePolicy {
+
+    public enum Format { PNG, JPEG }
+
+    public static final CapturePolicy DEFAULT = new CapturePolicy(Format.PNG, 0.8f, 1.0, 0, true, 0);
+
+    private final Format format;
+    private final float quality;
+    private final double scale;
+    private final int maxDimension;
+    private final boolean cropToMatch;
+    private final int margin;
+
+    public CapturePolicy(Format format, float quality, double scale, int maxDimension, boolean cropToMatch, int margin) {
+        if (quality < 0 || quality > 1) {
+            throw new IllegalArgumentException("JPEG quality should be between 0 and 1, not " + quality);
+        }
+        if (scale <= 0 || scale > 1) {
+            throw new IllegalArgumentException("Scale should be greater than 0 and at most 1, not " + scale);
+        }
+        this.format = format;
+        this.quality = quality;
+        this.scale = scale;
+        this.maxDimension = Math.max(0, maxDimension);
+        this.cropToMatch = cropToMatch;
+        this.margin = Math.max(0, margin);
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    public boolean isCropToMatch() {
+        return cropToMatch;
+    }
+
+    /**
+     * Return file extension of the format, with dot.
+     */
+    public String getExtension() {
+        return format == Format.JPEG ? ".jpg" : ".png";
+    }
+
+    /**
+     * Return area captured for match, match plus margin clipped to bounds, or bounds if captures are not cropped.
+     */
+    public Rectangle matchArea(Rectangle match, Rectangle bounds) {
+        if (!cropToMatch) {
+            return bounds;
+        }
+        Rectangle area = new Rectangle(match.x - margin, match.y - margin, match.width + 2 * margin, match.height + 2 * margin);
+        Rectangle clipped = area.intersection(bounds);
+        return clipped.isEmpty() ? match : clipped;
+    }
+
+    /**
+     * Return image downscaled by scale and max dimension, image itself if it is small enough.
+     */
+    public BufferedImage resize(BufferedImage image) {
+        double factor = scale;
+        int larger = Math.max(image.getWidth(), image.getHeight());
+        if (maxDimension > 0 && larger * factor > maxDimension) {
+            factor = (double) maxDimension / larger;
+        }
+        if (factor >= 1) {
+            return image;
+        }
+        int width = Math.max(1, (int) Math.round(image.getWidth() * factor));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * factor));
+        BufferedImage resized = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = resized.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(image, 0, 0, width, height, null);
+        graphics.dispose();
+        return resized;
+    }
+
+    /**
+     * Resize and encode image into file.
+     */
+    public void write(BufferedImage image, File file) throws IOException {
+        BufferedImage resized = resize(image);
+        if (format == Format.PNG) {
+            ImageIO.write(resized, "png", file);
+            return;
+        }
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+        if (!writers.hasNext()) {
+            throw new IOException("No JPEG writer available");
+        }
+        ImageWriter writer = writers.next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(quality);
+        OutputStream stream = new FileOutputStream(file);
+        try {
+            ImageOutputStream output = ImageIO.createImageOutputStream(stream);
+            try {
+                writer.setOutput(output);
+                writer.write(null, new IIOImage(withoutAlpha(resized), null, null), param);
+            } finally {
+                writer.dispose();
+                output.close();
+            }
+        } finally {
+            stream.close();
+        }
+    }
+
+    private static BufferedImage withoutAlpha(BufferedImage image) {
+        if (!image.getColorModel().hasAlpha()) {
+            return image;
+        }
+        BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = rgb.createGraphics();
+        graphics.drawImage(image, 0, 0, null);
+        graphics.dispose();
+        return rgb;
+    }
+
+    @Override
+    public String toString() {
+        return "format=" + format + " quality=" + quality + " scale=" + scale + " maxDimension=" + maxDimension
+                + " cropToMatch=" + cropToMatch + " margin=" + margin;
+    }
+}
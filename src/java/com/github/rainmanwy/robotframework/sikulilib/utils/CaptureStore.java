@@ -0,0 +1,331 @@
+package com.github.rainmanwy.robotframework.sikulilib.utils;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Store captures by content: unnamed captures are named by size and pixel hash,
+ * so a capture which is identical to a stored one is neither encoded nor written again,
+ * and the log points to the file which is already there.
+ * A capture counts as identical only if size and SHA-256 of its pixels are equal, different captures
+ * with the same name get a numbered suffix. A queued capture which is deduplicated against is never dropped
+ * by the writer (see CaptureWriter.share()).
+ *
+ * The capture policy is part of the name, so the same pixels stored as PNG and JPEG are different files.
+ * Captures with an explicit name are always written under that name.
+ *
+ * Stored files and their sizes are tracked in memory, the capture folder is never listed.
+ * When a byte or file budget is set and exceeded, the oldest captures are deleted first,
+ * except captures which were saved by a failed keyword (see beginKeyword()) and captures still being written.
+ * Files which were in the folder before the server started are only remembered for deduplication,
+ * they are neither counted in the budget nor deleted.
+ */
+public class CaptureStore implements CaptureWriter.Listener {
+
+    private static CaptureStore MYSELF = null;
+    private static final ThreadLocal<List<File>> KEYWORD_CAPTURES = new ThreadLocal<List<File>>();
+
+    // held while a capture is looked up and registered, never while the writer waits for space in its queue
+    private final Object saveLock = new Object();
+
+    // oldest first, a capture referenced again moves to the end
+    private final LinkedHashMap<File, Entry> entries = new LinkedHashMap<File, Entry>(16, 0.75f, true);
+    private long maxBytes = 0;
+    private int maxFiles = 0;
+    private long bytes = 0;
+    private long stored = 0;
+    private long deduplicated = 0;
+    private long evicted = 0;
+    private long pinned = 0;
+    private int external = 0;
+
+    private CaptureStore() {}
+
+    public static synchronized CaptureStore getInstance() {
+        if (MYSELF == null) {
+            MYSELF = new CaptureStore();
+            CaptureWriter.getInstance().setListener(MYSELF);
+        }
+        return MYSELF;
+    }
+
+    /**
+     * Queue image to be written into folder, return its file, or the file of an identical capture.
+     */
+    public File save(String folder, String name, BufferedImage image, CapturePolicy policy) throws InterruptedException {
+        CaptureWriter writer = CaptureWriter.getInstance();
+        File file;
+        boolean write = true;
+        Entry entry;
+        synchronized (saveLock) {
+            byte[] digest = null;
+            if (name != null && !name.equals("")) {
+                file = writer.nextFile(folder, name, policy.getExtension()).getAbsoluteFile();
+            } else {
+                digest = ImageHash.digest(image);
+                String contentName = "sikuliximage-" + ImageHash.toString(image) + policyTag(policy);
+                for (int collision = 0; ; collision++) {
+                    String suffix = collision > 0 ? "-" + collision : "";
+                    file = new File(folder, contentName + suffix + policy.getExtension()).getAbsoluteFile();
+                    Boolean same = isSame(file, image, digest, policy);
+                    if (same == null || same) {
+                        write = same == null;
+                        break;
+                    }
+                }
+            }
+            entry = track(file, write, digest);
+        }
+        if (write) {
+            // registered already, so an identical capture saved meanwhile waits for this file instead of writing it again
+            queue(file, image, policy, entry);
+        }
+        List<File> captures = KEYWORD_CAPTURES.get();
+        if (captures != null) {
+            captures.add(file);
+        }
+        return file;
+    }
+
+    /**
+     * Queue a registered capture, the writer may block, and tells written() from its own thread.
+     */
+    private void queue(File file, BufferedImage image, CapturePolicy policy, Entry entry) throws InterruptedException {
+        CaptureWriter writer = CaptureWriter.getInstance();
+        try {
+            writer.write(file, image, policy);
+        } catch (InterruptedException e) {
+            synchronized (this) {
+                entries.remove(file);
+            }
+            throw e;
+        }
+        boolean shared;
+        synchronized (this) {
+            entry.queued = true;
+            shared = entry.shared;
+        }
+        if (shared) {
+            writer.share(file);
+        }
+    }
+
+    /**
+     * Return true if file holds (or will hold) the same capture, false if it holds another capture,
+     * and null if the file is free to be written.
+     */
+    private Boolean isSame(File file, BufferedImage image, byte[] digest, CapturePolicy policy) {
+        CaptureWriter writer = CaptureWriter.getInstance();
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(file);
+            if (entry != null && !entry.queued && !entry.written) {
+                // registered by a save which is still queueing it, the writer is told to keep it once it is queued
+                boolean same = Arrays.equals(entry.digest, digest);
+                entry.shared |= same;
+                return same;
+            }
+        }
+        boolean same = entry != null && Arrays.equals(entry.digest, digest);
+        if (same && writer.share(file)) {
+            return true;
+        }
+        if (file.exists()) {
+            if (entry != null && entry.digest != null) {
+                return same;
+            }
+            return sameAsFile(file, image, digest, policy);
+        }
+        if (writer.isPending(file)) {
+            return false;
+        }
+        // never written, dropped by the queue, or writing failed
+        return null;
+    }
+
+    /**
+     * Compare a file stored before the server started, only files written without loss can be compared.
+     */
+    private static boolean sameAsFile(File file, BufferedImage image, byte[] digest, CapturePolicy policy) {
+        if (policy.getFormat() != CapturePolicy.Format.PNG || policy.resize(image) != image) {
+            return false;
+        }
+        try {
+            BufferedImage stored = ImageIO.read(file);
+            return stored != null && Arrays.equals(ImageHash.digest(stored), digest);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private synchronized Entry track(File file, boolean write, byte[] digest) {
+        Entry entry = entries.get(file);
+        if (write) {
+            stored++;
+        } else {
+            deduplicated++;
+        }
+        if (entry == null) {
+            entry = new Entry();
+            entries.put(file, entry);
+            if (!write) {
+                // stored before the server started, not part of the budget
+                entry.written = true;
+                entry.external = true;
+                external++;
+            }
+        } else if (write && entry.external) {
+            // overwritten by a named capture, from now on it is a capture of this server
+            entry.external = false;
+            external--;
+        }
+        if (digest != null) {
+            entry.digest = digest;
+        }
+        return entry;
+    }
+
+    @Override
+    public synchronized void written(File file) {
+        Entry entry = entries.get(file.getAbsoluteFile());
+        if (entry == null) {
+            return;
+        }
+        long length = file.length();
+        bytes += length - entry.bytes;
+        entry.bytes = length;
+        entry.written = true;
+        evict();
+    }
+
+    /**
+     * Delete oldest written captures which are not pinned, until usage fits the budget.
+     */
+    private void evict() {
+        Iterator<Map.Entry<File, Entry>> iterator = entries.entrySet().iterator();
+        while (overBudget() && iterator.hasNext()) {
+            Map.Entry<File, Entry> next = iterator.next();
+            Entry entry = next.getValue();
+            File file = next.getKey();
+            if (!entry.written) {
+                if (entry.queued && !CaptureWriter.getInstance().isPending(file)) {
+                    // dropped by the queue, or writing failed
+                    iterator.remove();
+                }
+                continue;
+            }
+            if (entry.pinned || entry.external) {
+                continue;
+            }
+            if (!file.delete() && file.exists()) {
+                System.out.println("*WARN* Could not delete capture " + file);
+                continue;
+            }
+            bytes -= entry.bytes;
+            evicted++;
+            iterator.remove();
+        }
+    }
+
+    private boolean overBudget() {
+        return (maxBytes > 0 && bytes > maxBytes) || (maxFiles > 0 && entries.size() - external > maxFiles);
+    }
+
+    /**
+     * Set budget of stored captures, 0 is unlimited.
+     */
+    public synchronized void setBudget(long maxBytes, int maxFiles) {
+        this.maxBytes = Math.max(0, maxBytes);
+        this.maxFiles = Math.max(0, maxFiles);
+        evict();
+    }
+
+    /**
+     * Start collecting captures saved by the keyword running in this thread,
+     * return the collection of the outer keyword which should be given to endKeyword().
+     */
+    public static List<File> beginKeyword() {
+        List<File> outer = KEYWORD_CAPTURES.get();
+        KEYWORD_CAPTURES.set(new ArrayList<File>());
+        return outer;
+    }
+
+    /**
+     * Stop collecting captures of the keyword, captures of a failed keyword are never evicted.
+     */
+    public static void endKeyword(List<File> outer, boolean failed) {
+        List<File> captures = KEYWORD_CAPTURES.get();
+        if (outer == null) {
+            KEYWORD_CAPTURES.remove();
+        } else {
+            KEYWORD_CAPTURES.set(outer);
+            if (captures != null) {
+                outer.addAll(captures);
+            }
+        }
+        if (failed && captures != null && !captures.isEmpty()) {
+            getInstance().pin(captures);
+        }
+    }
+
+    private synchronized void pin(List<File> files) {
+        for (File file : files) {
+            Entry entry = entries.get(file);
+            if (entry != null && !entry.pinned) {
+                entry.pinned = true;
+                pinned++;
+            }
+        }
+    }
+
+    /**
+     * Default policy keeps plain names, other policies add a short tag of their settings.
+     */
+    private static String policyTag(CapturePolicy policy) {
+        if (policy == CapturePolicy.DEFAULT) {
+            return "";
+        }
+        return "-" + String.format("%08x", policy.toString().hashCode());
+    }
+
+    public synchronized Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new HashMap<String, Object>();
+        statistics.put("stored", stored);
+        statistics.put("deduplicated", deduplicated);
+        statistics.put("evicted", evicted);
+        statistics.put("pinned", pinned);
+        statistics.put("files", entries.size() - external);
+        statistics.put("bytes", bytes);
+        statistics.put("maxBytes", maxBytes);
+        statistics.put("maxFiles", maxFiles);
+        return statistics;
+    }
+
+    public synchronized void resetStatistics() {
+        stored = 0;
+        deduplicated = 0;
+        evicted = 0;
+        pinned = 0;
+    }
+
+    private static class Entry {
+
+        private long bytes = 0;
+        private byte[] digest = null;
+        private boolean queued = false;
+        private boolean written = false;
+        private boolean pinned = false;
+        private boolean external = false;
+        private boolean shared = false;
+    }
+}
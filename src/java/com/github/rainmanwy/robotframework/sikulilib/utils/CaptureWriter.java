@@ -0,0 +1,264 @@
+package com.github.rainmanwy.robotframework.sikulilib.utils;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * Write captured images to disk in a background thread.
+ *
+ * File names are reserved synchronously, so the keyword could log the path before the file is written.
+ * When the queue is full, the policy decides what happens:
+ * - BLOCK: keyword waits until there is space in the queue
+ * - DROP_OLDEST: the oldest pending capture is discarded, except captures which are shared (see share())
+ * - THUMBNAIL: the capture is downscaled and queued without waiting, which makes encoding much cheaper.
+ *   Thumbnails are queued over capacity up to THUMBNAIL_OVERFLOW times capacity, then the oldest thumbnail is dropped
+ * Images are resized and encoded in the background too, as their capture policy says (see CapturePolicy).
+ * Pending captures are flushed when a session is closed, before the client stops the server (Flush Captures),
+ * and when the JVM shuts down.
+ */
+public class CaptureWriter implements Runnable {
+
+    public enum Policy { BLOCK, DROP_OLDEST, THUMBNAIL }
+
+    /**
+     * Told about every file after it is written.
+     */
+    public interface Listener {
+        void written(File file);
+    }
+
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final int THUMBNAIL_SIZE = 320;
+    private static final int THUMBNAIL_OVERFLOW = 4;
+    private static final CapturePolicy THUMBNAIL = new CapturePolicy(CapturePolicy.Format.PNG, 1f, 1.0, THUMBNAIL_SIZE, true, 0);
+    private static CaptureWriter MYSELF = null;
+
+    private final LinkedList<Job> queue = new LinkedList<Job>();
+    private int capacity = DEFAULT_CAPACITY;
+    private Policy policy = Policy.BLOCK;
+    private int writing = 0;
+    private File writingFile = null;
+    private volatile Listener listener = null;
+    private long dropped = 0;
+    private long lastStamp = 0;
+
+    private CaptureWriter() {
+        Thread thread = new Thread(this, "sikuli-capture-writer");
+        thread.setDaemon(true);
+        thread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    flush();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }));
+    }
+
+    public static synchronized CaptureWriter getInstance() {
+        if (MYSELF == null) {
+            MYSELF = new CaptureWriter();
+        }
+        return MYSELF;
+    }
+
+    /**
+     * Reserve file for a new capture in folder.
+     * If name is empty, a unique timed name is generated, like sikuliximage-1600000000000.png
+     */
+    public File nextFile(String folder, String name) {
+        return nextFile(folder, name, ".png");
+    }
+
+    /**
+     * Reserve file for a new capture in folder, with extension (like ".jpg") of the capture format.
+     */
+    public synchronized File nextFile(String folder, String name, String extension) {
+        if (name == null || name.equals("")) {
+            lastStamp = Math.max(System.currentTimeMillis(), lastStamp + 1);
+            name = "sikuliximage-" + lastStamp + extension;
+        } else if (!name.endsWith(extension)) {
+            name = name + extension;
+        }
+        return new File(folder, name);
+    }
+
+    /**
+     * Queue image to be written to file as PNG in original size. Depending on policy, this may block while the queue is full.
+     */
+    public void write(File file, BufferedImage image) throws InterruptedException {
+        write(file, image, CapturePolicy.DEFAULT);
+    }
+
+    /**
+     * Queue image to be resized and encoded by capture policy into file.
+     * Depending on queue policy, this may block while the queue is full.
+     */
+    public void write(File file, BufferedImage image, CapturePolicy capturePolicy) throws InterruptedException {
+        BufferedImage thumbnail = null;
+        while (!enqueue(file, image, thumbnail, capturePolicy)) {
+            // queue is full under THUMBNAIL, downscale without holding the monitor and try again
+            thumbnail = THUMBNAIL.resize(image);
+        }
+    }
+
+    /**
+     * Queue image, or thumbnail when the queue is full under THUMBNAIL.
+     * Return false if a thumbnail is needed but not given.
+     */
+    private synchronized boolean enqueue(File file, BufferedImage image, BufferedImage thumbnail,
+                                         CapturePolicy capturePolicy) throws InterruptedException {
+        if (queue.size() >= capacity) {
+            if (policy == Policy.DROP_OLDEST) {
+                dropOldest(capacity, false);
+            } else if (policy == Policy.THUMBNAIL) {
+                if (thumbnail == null) {
+                    return false;
+                }
+                int limit = capacity * THUMBNAIL_OVERFLOW;
+                dropOldest(limit, true);
+                if (queue.size() < limit) {
+                    queue.addLast(new Job(file, thumbnail, capturePolicy, true));
+                    notifyAll();
+                    return true;
+                }
+            }
+        }
+        // BLOCK, or when only shared captures are queued
+        while (queue.size() >= capacity) {
+            wait();
+        }
+        queue.addLast(new Job(file, image, capturePolicy, false));
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Drop oldest pending captures (only thumbnails if thumbnailsOnly) until fewer than limit are queued.
+     * Shared captures are never dropped.
+     */
+    private void dropOldest(int limit, boolean thumbnailsOnly) {
+        Iterator<Job> iterator = queue.iterator();
+        while (queue.size() >= limit && iterator.hasNext()) {
+            Job job = iterator.next();
+            if (job.shared || (thumbnailsOnly && !job.thumbnail)) {
+                continue;
+            }
+            iterator.remove();
+            dropped++;
+            System.out.println("*WARN* Capture queue is full, " + job.file.getName() + " is dropped");
+        }
+    }
+
+    /**
+     * Wait until all queued captures are written.
+     */
+    public synchronized void flush() throws InterruptedException {
+        while (!queue.isEmpty() || writing > 0) {
+            wait();
+        }
+    }
+
+    public synchronized void setQueue(int capacity, Policy policy) {
+        this.capacity = Math.max(1, capacity);
+        this.policy = policy;
+        notifyAll();
+    }
+
+    /**
+     * Return true if file is queued or being written.
+     */
+    public synchronized boolean isPending(File file) {
+        if (writingFile != null && writingFile.equals(file)) {
+            return true;
+        }
+        for (Job job : queue) {
+            if (job.file.equals(file)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Mark file as referenced by another capture, so it is never dropped from the queue.
+     * Return true if file is queued or being written, false if it was written, dropped or never queued.
+     */
+    public synchronized boolean share(File file) {
+        if (writingFile != null && writingFile.equals(file)) {
+            return true;
+        }
+        for (Job job : queue) {
+            if (job.file.equals(file)) {
+                job.shared = true;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            Job job;
+            synchronized (this) {
+                while (queue.isEmpty()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                job = queue.removeFirst();
+                writing++;
+                writingFile = job.file;
+                notifyAll();
+            }
+            try {
+                job.capturePolicy.write(job.image, job.file);
+                Listener current = listener;
+                if (current != null) {
+                    current.written(job.file);
+                }
+            } catch (IOException e) {
+                System.out.println("*WARN* Save capture " + job.file + " failed: " + e.getMessage());
+            } finally {
+                synchronized (this) {
+                    writing--;
+                    writingFile = null;
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    private static class Job {
+
+        private final File file;
+        private final BufferedImage image;
+        private final CapturePolicy capturePolicy;
+        private final boolean thumbnail;
+        private boolean shared = false;
+
+        Job(File file, BufferedImage image, CapturePolicy capturePolicy, boolean thumbnail) {
+            this.file = file;
+            this.image = image;
+            this.capturePolicy = capturePolicy;
+            this.thumbnail = thumbnail;
+        }
+    }
+}
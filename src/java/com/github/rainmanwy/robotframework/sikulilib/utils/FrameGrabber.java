@@ -0,0 +1,134 @@
+package com.github.rainmanwy.robotframework.sikulilib.utils;
+
+import java.awt.Rectangle;
+
+import org.sikuli.script.Region;
+import org.sikuli.script.Screen;
+import org.sikuli.script.ScreenImage;
+
+/**
+ * Capture the active screen in background, keeping the newest frame.
+ *
+ * Keywords take the newest frame instead of capturing the screen themselves, which removes capture latency
+ * from keywords and lets several keywords share one frame. If the newest frame is older than max frame age,
+ * or does not cover the requested region, the screen is captured synchronously as before.
+ * Every capture is a new image (SikuliX allocates it), a frame is never changed once it is published,
+ * and keywords get a copy of their region (see FrameMatcher.crop()).
+ * Every session has its own grabber (see SessionContext.getFrameGrabber()), which follows the screen of the session,
+ * so sessions on different screens never retarget or stop the grabber of each other.
+ */
+public class FrameGrabber implements Runnable {
+
+    private volatile Frame newest = null;
+    private volatile Screen screen = null;
+    private volatile float fps = 0;
+    private volatile long maxFrameAge = 500;
+    private final String name;
+    private Thread thread = null;
+
+    public FrameGrabber(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Start grabbing frames of screen with fps frames per second, 0 stops grabbing.
+     * Frames older than maxFrameAge milliseconds are not used by keywords.
+     */
+    public synchronized void start(Screen screen, float fps, long maxFrameAge) {
+        this.screen = screen;
+        this.fps = fps;
+        this.maxFrameAge = maxFrameAge;
+        if (fps <= 0) {
+            stop();
+        } else if (thread == null) {
+            thread = new Thread(this, "sikuli-frame-grabber-" + name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    public synchronized void stop() {
+        fps = 0;
+        newest = null;
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    public boolean isRunning() {
+        return fps > 0;
+    }
+
+    public void setScreen(Screen screen) {
+        this.screen = screen;
+    }
+
+    /**
+     * Return image of region from the newest frame, or capture region from screen when there is no usable frame.
+     */
+    public ScreenImage capture(Screen screen, Region region) {
+        Frame frame = newest;
+        if (frame != null && isRunning()) {
+            Rectangle rect = region.getRect();
+            if (frame.screenId == screen.getID() && frame.image.getROI().contains(rect)
+                    && System.currentTimeMillis() - frame.stamp <= maxFrameAge) {
+                return FrameMatcher.crop(frame.image, rect);
+            }
+        }
+        return screen.capture(region);
+    }
+
+    @Override
+    public void run() {
+        boolean failing = false;
+        try {
+            while (fps > 0 && !Thread.currentThread().isInterrupted()) {
+                long start = System.currentTimeMillis();
+                Screen current = screen;
+                try {
+                    newest = new Frame(current.capture(), start, current.getID());
+                    if (failing) {
+                        System.out.println("*INFO* Frame grabber captures again");
+                        failing = false;
+                    }
+                } catch (RuntimeException e) {
+                    // keywords capture synchronously until capturing works again
+                    newest = null;
+                    if (!failing) {
+                        System.out.println("*WARN* Frame grabber capture failed: " + e);
+                        failing = true;
+                    }
+                }
+                long interval = (long) (1000 / Math.max(fps, 0.01f));
+                try {
+                    Thread.sleep(Math.max(0, interval - (System.currentTimeMillis() - start)));
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        } finally {
+            synchronized (this) {
+                if (thread == Thread.currentThread()) {
+                    // stopped by an error, not by stop()
+                    fps = 0;
+                    newest = null;
+                    thread = null;
+                }
+            }
+        }
+    }
+
+    private static class Frame {
+
+        private final ScreenImage image;
+        private final long stamp;
+        private final int screenId;
+
+        Frame(ScreenImage image, long stamp, int screenId) {
+            this.image = image;
+            this.stamp = stamp;
+            this.screenId = screenId;
+        }
+    }
+}
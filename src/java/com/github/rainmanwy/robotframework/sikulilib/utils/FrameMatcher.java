@@ -0,0 +1,389 @@
+package com.github.rainmanwy.robotframework.sikulilib.utils;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadFactory;
+
+import com.github.rainmanwy.robotframework.sikulilib.exceptions.ScreenOperationException;
+
+import org.sikuli.script.Finder;
+import org.sikuli.script.Image;
+import org.sikuli.script.Location;
+import org.sikuli.script.Match;
+import org.sikuli.script.Pattern;
+import org.sikuli.script.Region;
+import org.sikuli.script.ScreenImage;
+
+/**
+ * Match patterns against an already captured frame.
+ *
+ * Several patterns can be evaluated against the same frame on a bounded worker pool,
+ * so every pattern sees the same moment in time and only one screenshot is taken per poll.
+ */
+public class FrameMatcher {
+
+    private static final int POOL_SIZE = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private static final int MIN_PYRAMID_TEMPLATE = 8;
+    private static final int MAX_PYRAMID_CANDIDATES = 5;
+    private static final double COARSE_SIMILARITY_DROP = 0.15;
+    private static final int MIN_TILE = 256;
+    private static ExecutorService executor = null;
+    private static ForkJoinPool tilePool = null;
+
+    private FrameMatcher() {}
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(POOL_SIZE, new ThreadFactory() {
+                private int count = 0;
+
+                @Override
+                public synchronized Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "sikuli-matcher-" + count++);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    private static synchronized ForkJoinPool getTilePool() {
+        if (tilePool == null) {
+            tilePool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        }
+        return tilePool;
+    }
+
+    /**
+     * Same order as Region.findAllByRow: top to bottom, matches whose center lies in the same row left to right.
+     */
+    public static final Comparator<Match> BY_ROW = new Comparator<Match>() {
+        @Override
+        public int compare(Match m1, Match m2) {
+            Location c1 = m1.getCenter();
+            Location c2 = m2.getCenter();
+            if (c2.y > c1.y - m1.h / 2 && c2.y < c1.y + m1.h / 2) {
+                return c1.x > c2.x ? 1 : -1;
+            }
+            return c2.y < c1.y - m1.h / 2 ? 1 : -1;
+        }
+    };
+
+    /**
+     * Same order as Region.findAllByColumn: left to right, matches whose center lies in the same column top to bottom.
+     */
+    public static final Comparator<Match> BY_COLUMN = new Comparator<Match>() {
+        @Override
+        public int compare(Match m1, Match m2) {
+            Location c1 = m1.getCenter();
+            Location c2 = m2.getCenter();
+            if (c2.x > c1.x - m1.w / 2 && c2.x < c1.x + m1.w / 2) {
+                return c1.y > c2.y ? 1 : -1;
+            }
+            return c2.x < c1.x - m1.w / 2 ? 1 : -1;
+        }
+    };
+
+    /**
+     * Find pattern in frame, frame should be captured from region.
+     * Return null if pattern is not found.
+     * Patterns with preprocessing are matched by PreprocessedMatcher, without pyramid.
+     *
+     * Coarse to fine (pyramid) matching is used when the settings of the keyword have a pyramid scale
+     * (see SettingsSnapshot.getPyramidScale()). Candidates are searched on copies of frame and template
+     * which are downscaled by scale, then confirmed at full resolution only in small windows around each candidate.
+     * The coarse search costs about scale^4 of a full search (0.0625 for 0.5), so large rois get much faster.
+     * Accuracy trade-off: thin lines and small text may disappear when downscaled, so such templates could be missed,
+     * templates smaller than MIN_PYRAMID_TEMPLATE pixels after downscale are always matched at full resolution,
+     * and only the best MAX_PYRAMID_CANDIDATES coarse candidates are confirmed.
+     */
+    public static Match find(ScreenImage frame, Region region, Pattern pattern) {
+        return find(frame, region, pattern, SettingsSnapshot.current().getPyramidScale());
+    }
+
+    /**
+     * Find pattern with pyramid scale, which is given because worker threads have no keyword settings.
+     */
+    private static Match find(ScreenImage frame, Region region, Pattern pattern, float scale) {
+        long start = PerformanceStatistics.start();
+        try {
+            if (pattern instanceof PreprocessedPattern) {
+                return PreprocessedMatcher.find(frame, region, (PreprocessedPattern) pattern);
+            }
+            if (scale > 0 && pattern.isImagePattern()) {
+                BufferedImage template = pattern.getBImage();
+                if (template != null && Math.min(template.getWidth(), template.getHeight()) * scale >= MIN_PYRAMID_TEMPLATE) {
+                    return findPyramid(frame, pattern, template, scale);
+                }
+            }
+            return findFull(frame, region, pattern);
+        } finally {
+            PerformanceStatistics.getInstance().recordPhase(PerformanceStatistics.MATCH, start);
+        }
+    }
+
+    private static Match findFull(ScreenImage frame, Region region, Pattern pattern) {
+        Finder finder = new Finder(frame, region);
+        try {
+            finder.find(pattern);
+            if (finder.hasNext()) {
+                return finder.next();
+            }
+            return null;
+        } finally {
+            finder.destroy();
+        }
+    }
+
+    private static Match findPyramid(ScreenImage frame, Pattern pattern, BufferedImage template, float scale) {
+        BufferedImage smallFrame = Image.resize(frame.getImage(), scale);
+        BufferedImage smallTemplate = Image.resize(template, scale);
+        Pattern coarse = new Pattern(smallTemplate).similar(Math.max(0.5, pattern.getSimilar() - COARSE_SIMILARITY_DROP));
+        List<Match> candidates = new ArrayList<Match>();
+        Finder finder = new Finder(smallFrame);
+        try {
+            finder.findAll(coarse);
+            while (finder.hasNext()) {
+                candidates.add(finder.next());
+            }
+        } finally {
+            finder.destroy();
+        }
+        Collections.sort(candidates, BY_SCORE);
+
+        // confirm candidates at full resolution, window is the candidate plus a margin for the rounding of downscale
+        int margin = (int) Math.ceil(2 / scale);
+        Rectangle bounds = frame.getROI();
+        Match best = null;
+        for (Match candidate : candidates.subList(0, Math.min(MAX_PYRAMID_CANDIDATES, candidates.size()))) {
+            Rectangle window = new Rectangle(bounds.x + (int) (candidate.x / scale) - margin,
+                    bounds.y + (int) (candidate.y / scale) - margin,
+                    template.getWidth() + 2 * margin, template.getHeight() + 2 * margin).intersection(bounds);
+            if (window.width < template.getWidth() || window.height < template.getHeight()) {
+                continue;
+            }
+            Match match = findFull(crop(frame, window), new Region(window), pattern);
+            if (match != null && (best == null || match.getScore() > best.getScore())) {
+                best = match;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Return a copy of rect (screen coordinates) of frame.
+     * Finder reads the data buffer of an image as it is, so a sub image sharing the buffer of frame
+     * (like ScreenImage.getSub returns) would be matched against the pixels of a wrong area.
+     */
+    public static ScreenImage crop(ScreenImage frame, Rectangle rect) {
+        BufferedImage image = frame.getImage();
+        Rectangle bounds = frame.getROI();
+        BufferedImage sub = image.getSubimage(rect.x - bounds.x, rect.y - bounds.y, rect.width, rect.height);
+        WritableRaster raster = image.getColorModel().createCompatibleWritableRaster(rect.width, rect.height);
+        sub.copyData(raster);
+        BufferedImage copy = new BufferedImage(image.getColorModel(), raster, image.isAlphaPremultiplied(), null);
+        return new ScreenImage(rect, copy);
+    }
+
+    /**
+     * Find all occurrences of pattern in frame, frame should be captured from region.
+     *
+     * Frame is split into tiles which are searched in parallel on a fork join pool. Tiles overlap by the template size,
+     * a match belongs to the tile its top left corner lies in, and matches overlapping across tile seams
+     * are reduced to the best one. Result is sorted by order, or by score (best first) if order is null.
+     */
+    public static List<Match> findAll(ScreenImage frame, Region region, Pattern pattern, Comparator<Match> order) {
+        long start = PerformanceStatistics.start();
+        try {
+            BufferedImage template = pattern.isImagePattern() ? pattern.getBImage() : null;
+            List<Match> matches;
+            if (pattern instanceof PreprocessedPattern) {
+                matches = suppressOverlaps(PreprocessedMatcher.findAll(frame, region, (PreprocessedPattern) pattern));
+            } else if (template == null) {
+                matches = findAllFull(frame, region, pattern);
+            } else {
+                Dimension size = new Dimension(template.getWidth(), template.getHeight());
+                matches = getTilePool().invoke(new TileSearch(frame, pattern, size, frame.getROI()));
+                matches = suppressOverlaps(matches);
+            }
+            Collections.sort(matches, BY_SCORE);
+            if (order != null) {
+                Collections.sort(matches, order);
+            }
+            return matches;
+        } finally {
+            PerformanceStatistics.getInstance().recordPhase(PerformanceStatistics.MATCH, start);
+        }
+    }
+
+    private static List<Match> findAllFull(ScreenImage frame, Region region, Pattern pattern) {
+        List<Match> matches = new ArrayList<Match>();
+        Finder finder = new Finder(frame, region);
+        try {
+            finder.findAll(pattern);
+            while (finder.hasNext()) {
+                matches.add(finder.next());
+            }
+        } finally {
+            finder.destroy();
+        }
+        return matches;
+    }
+
+    /**
+     * Return matches best first, without matches which are covered more than half by a better match.
+     */
+    static List<Match> suppressOverlaps(List<Match> matches) {
+        Collections.sort(matches, BY_SCORE);
+        List<Match> kept = new ArrayList<Match>();
+        for (Match match : matches) {
+            boolean overlaps = false;
+            for (Match better : kept) {
+                Rectangle common = better.getRect().intersection(match.getRect());
+                if (!common.isEmpty() && common.width * common.height * 2 > match.w * match.h) {
+                    overlaps = true;
+                    break;
+                }
+            }
+            if (!overlaps) {
+                kept.add(match);
+            }
+        }
+        return kept;
+    }
+
+    private static final Comparator<Match> BY_SCORE = new Comparator<Match>() {
+        @Override
+        public int compare(Match m1, Match m2) {
+            return Double.compare(m2.getScore(), m1.getScore());
+        }
+    };
+
+    /**
+     * Search matches whose top left corner lies in core (screen coordinates), large cores are split in halves.
+     */
+    private static class TileSearch extends RecursiveTask<List<Match>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ScreenImage frame;
+        private final Pattern pattern;
+        private final Dimension template;
+        private final Rectangle core;
+
+        TileSearch(ScreenImage frame, Pattern pattern, Dimension template, Rectangle core) {
+            this.frame = frame;
+            this.pattern = pattern;
+            this.template = template;
+            this.core = core;
+        }
+
+        @Override
+        protected List<Match> compute() {
+            int minWidth = Math.max(MIN_TILE, 2 * template.width);
+            int minHeight = Math.max(MIN_TILE, 2 * template.height);
+            if (core.width >= 2 * minWidth && core.width >= core.height) {
+                int half = core.width / 2;
+                return join(new Rectangle(core.x, core.y, half, core.height),
+                        new Rectangle(core.x + half, core.y, core.width - half, core.height));
+            }
+            if (core.height >= 2 * minHeight) {
+                int half = core.height / 2;
+                return join(new Rectangle(core.x, core.y, core.width, half),
+                        new Rectangle(core.x, core.y + half, core.width, core.height - half));
+            }
+            return search();
+        }
+
+        private List<Match> join(Rectangle first, Rectangle second) {
+            TileSearch other = new TileSearch(frame, pattern, template, second);
+            other.fork();
+            List<Match> matches = new TileSearch(frame, pattern, template, first).compute();
+            matches.addAll(other.join());
+            return matches;
+        }
+
+        private List<Match> search() {
+            Rectangle tile = new Rectangle(core.x, core.y, core.width + template.width - 1, core.height + template.height - 1)
+                    .intersection(frame.getROI());
+            List<Match> matches = new ArrayList<Match>();
+            if (tile.width < template.width || tile.height < template.height) {
+                return matches;
+            }
+            for (Match match : findAllFull(crop(frame, tile), new Region(tile), pattern)) {
+                if (core.contains(match.x, match.y)) {
+                    matches.add(match);
+                }
+            }
+            return matches;
+        }
+    }
+
+    /**
+     * Match all patterns against the same frame in parallel.
+     * Patterns are given in priority order, the first pattern (by order) which is found is decisive,
+     * and lower priority patterns which are still running are cancelled.
+     * Return null if no pattern is found.
+     */
+    public static FrameMatch findFirst(final ScreenImage frame, final Region region, List<Pattern> patterns)
+            throws ScreenOperationException, InterruptedException {
+        List<Future<Match>> futures = new ArrayList<Future<Match>>();
+        final float scale = SettingsSnapshot.current().getPyramidScale();
+        for (final Pattern pattern : patterns) {
+            futures.add(getExecutor().submit(new Callable<Match>() {
+                @Override
+                public Match call() {
+                    return find(frame, region, pattern, scale);
+                }
+            }));
+        }
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                Match match = futures.get(i).get();
+                if (match != null) {
+                    return new FrameMatch(i, match);
+                }
+            }
+            return null;
+        } catch (ExecutionException e) {
+            throw new ScreenOperationException("Match on captured frame failed: " + e.getCause(), e.getCause());
+        } finally {
+            for (Future<Match> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    public static class FrameMatch {
+
+        private final int index;
+        private final Match match;
+
+        FrameMatch(int index, Match match) {
+            this.index = index;
+            this.match = match;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public Match getMatch() {
+            return match;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.github.rainmanwy.robotframework.sikulilib.utils;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * 64 bit hash of image pixels, used to find images which were seen before.
+ *
+ * Integer RGB images which own their whole data buffer (like screen captures and cropped frames) are hashed
+ * straight from the buffer, other images through getRGB row by row. Both give the same hash for the same pixels.
+ */
+public class ImageHash {
+
+    private static final long SEED = 1125899906842597L;
+
+    private ImageHash() {}
+
+    public static long of(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        long hash = SEED;
+        int[] pixels = plainPixels(image);
+        if (pixels != null) {
+            // getRGB reports pixels of RGB images as opaque
+            int alpha = image.getType() == BufferedImage.TYPE_INT_RGB ? 0xff000000 : 0;
+            for (int pixel : pixels) {
+                hash = 31 * hash + (pixel | alpha);
+            }
+            return hash;
+        }
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                hash = 31 * hash + row[x];
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Return SHA-256 of image dimensions and pixels, for telling images apart where a 64 bit hash could collide.
+     */
+    public static byte[] digest(BufferedImage image) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        // holds a row of pixels, or the dimensions for images narrower than two pixels
+        ByteBuffer bytes = ByteBuffer.allocate(Math.max(8, width * 4));
+        bytes.putInt(width).putInt(height);
+        digest.update(bytes.array(), 0, 8);
+        int[] pixels = plainPixels(image);
+        int alpha = pixels != null && image.getType() == BufferedImage.TYPE_INT_RGB ? 0xff000000 : 0;
+        int[] row = pixels != null ? pixels : new int[width];
+        for (int y = 0; y < height; y++) {
+            int offset = 0;
+            if (pixels != null) {
+                offset = y * width;
+            } else {
+                image.getRGB(0, y, width, 1, row, 0, width);
+            }
+            bytes.clear();
+            for (int x = 0; x < width; x++) {
+                bytes.putInt(row[offset + x] | alpha);
+            }
+            digest.update(bytes.array(), 0, width * 4);
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Return image dimensions and hash as text, usable in keys and file names.
+     */
+    public static String toString(BufferedImage image) {
+        return image.getWidth() + "x" + image.getHeight() + "-" + String.format("%016x", of(image));
+    }
+
+    /**
+     * Return pixel data if it is laid out exactly like getRGB returns it, otherwise null.
+     */
+    static int[] plainPixels(BufferedImage image) {
+        int type = image.getType();
+        if (type != BufferedImage.TYPE_INT_RGB && type != BufferedImage.TYPE_INT_ARGB) {
+            return null;
+        }
+        Raster raster = image.getRaster();
+        DataBuffer buffer = raster.getDataBuffer();
+        if (!(buffer instanceof DataBufferInt) || buffer.getNumBanks() != 1 || buffer.getOffset() != 0
+                || raster.getSampleModelTranslateX() != 0 || raster.getSampleModelTranslateY() != 0
+                || buffer.getSize() != image.getWidth() * image.getHeight()) {
+            return null;
+        }
+        return ((DataBufferInt) buffer).getData();
+    }
+}
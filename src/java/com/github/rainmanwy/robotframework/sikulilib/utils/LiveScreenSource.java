@@ -0,0 +1,83 @@
+package com.github.rainmanwy.robotframework.sikulilib.utils;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+import javax.imageio.ImageIO;
+
+import org.sikuli.script.Region;
+import org.sikuli.script.Screen;
+import org.sikuli.script.ScreenImage;
+
+/**
+ * Capture the real screen, through the frame grabber of the current session when it is running.
+ *
+ * Captured frames could be recorded into a folder, which can be replayed later with ReplayScreenSource.
+ * Only frames captured to search or read are recorded, screenshots are not.
+ * Recorded frames are written as png right away, not through the capture writer, so they are never dropped or downscaled.
+ */
+public class LiveScreenSource implements ScreenSource {
+
+    private final File recordFolder;
+    private long recordStart = 0;
+    private int recorded = 0;
+
+    public LiveScreenSource() {
+        this.recordFolder = null;
+    }
+
+    /**
+     * Record every frame captured to search or read into folder, see ReplayScreenSource for the session format.
+     */
+    public LiveScreenSource(String recordFolder) {
+        this.recordFolder = new File(recordFolder);
+        this.recordFolder.mkdirs();
+    }
+
+    @Override
+    public ScreenImage capture(Screen screen, Region region) {
+        ScreenImage image = SessionContext.current().getFrameGrabber().capture(screen, region);
+        if (recordFolder != null) {
+            record(image);
+        }
+        return image;
+    }
+
+    @Override
+    public ScreenImage snapshot(Screen screen, Region region) {
+        return SessionContext.current().getFrameGrabber().capture(screen, region);
+    }
+
+    @Override
+    public boolean performsInput() {
+        return true;
+    }
+
+    /**
+     * Write frame, and list it in the session file only after it is on disk.
+     */
+    private synchronized void record(ScreenImage image) {
+        long now = System.currentTimeMillis();
+        if (recorded == 0) {
+            recordStart = now;
+        }
+        String name = String.format("frame-%06d.png", recorded++);
+        Rectangle bounds = image.getROI();
+        try {
+            if (!ImageIO.write(image.getImage(), "png", new File(recordFolder, name))) {
+                throw new IOException("no png writer");
+            }
+            Writer writer = new FileWriter(new File(recordFolder, ReplayScreenSource.SESSION_FILE), true);
+            try {
+                writer.write((now - recordStart) + " " + name + " " + bounds.x + " " + bounds.y + "\n");
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            System.out.println("*WARN* Record frame failed: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.github.rainmanwy.robotframework.sikulilib.utils;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Remember where each image was last matched on screen.
+ *
+ * Images usually appear at the same place, so searching a small neighborhood around the last location first
+ * avoids scanning the whole roi. Hints could be stored in a file, so the next run starts with known locations.
+ */
+public class LocationHints {
+
+    private static LocationHints MYSELF = null;
+
+    private final Map<String, Rectangle> hints = new HashMap<String, Rectangle>();
+    private File file = null;
+    private long hits = 0;
+    private long misses = 0;
+    private long unknown = 0;
+
+    private LocationHints() {
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    save();
+                } catch (IOException e) {
+                    System.err.println("Save location hints failed: " + e.getMessage());
+                }
+            }
+        }));
+    }
+
+    public static synchronized LocationHints getInstance() {
+        if (MYSELF == null) {
+            MYSELF = new LocationHints();
+        }
+        return MYSELF;
+    }
+
+    /**
+     * Return last matched location (screen coordinates) of image, or null if it is unknown.
+     */
+    public synchronized Rectangle get(String image) {
+        Rectangle hint = hints.get(image);
+        if (hint == null) {
+            unknown++;
+            return null;
+        }
+        return new Rectangle(hint);
+    }
+
+    public synchronized void put(String image, Rectangle location) {
+        hints.put(image, new Rectangle(location));
+    }
+
+    public synchronized void hit() {
+        hits++;
+    }
+
+    public synchronized void miss() {
+        misses++;
+    }
+
+    public synchronized void clear() {
+        hints.clear();
+    }
+
+    public synchronized Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new HashMap<String, Object>();
+        statistics.put("hits", hits);
+        statistics.put("misses", misses);
+        statistics.put("unknown", unknown);
+        statistics.put("hitRate", hits + misses == 0 ? 0.0 : (double) hits / (hits + misses));
+        statistics.put("entries", hints.size());
+        return statistics;
+    }
+
+    /**
+     * Load hints from file if it exists, hints are saved to the same file when the server stops.
+     */
+    public synchronized void setFile(String path) throws IOException {
+        file = new File(path);
+        if (!file.isFile()) {
+            return;
+        }
+        Properties properties = new Properties();
+        InputStream in = new FileInputStream(file);
+        try {
+            properties.load(in);
+        } finally {
+            in.close();
+        }
+        for (String image : properties.stringPropertyNames()) {
+            String[] values = properties.getProperty(image).split(",");
+            if (values.length == 4) {
+                hints.put(image, new Rectangle(Integer.parseInt(values[0].trim()), Integer.parseInt(values[1].trim()),
+                        Integer.parseInt(values[2].trim()), Integer.parseInt(values[3].trim())));
+            }
+        }
+    }
+
+    public synchronized void save() throws IOException {
+        if (file == null) {
+            return;
+        }
+        Properties properties = new Properties();
+        for (Map.Entry<String, Rectangle> entry : hints.entrySet()) {
+            Rectangle r = entry.getValue();
+            properties.setProperty(entry.getKey(), r.x + "," + r.y + "," + r.width + "," + r.height);
+        }
+        OutputStream out = new FileOutputStream(file);
+        try {
+            properties.store(out, "SikuliLibrary location hints");
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.github.rainmanwy.robotframework.sikulilib.utils;
+
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.sikuli.script.Match;
+
+/**
+ * Matches kept on server side, so keywords can pass a short handle like match:3f9c0a2b71d4e685 instead of match coordinates.
+ * The stored Match keeps its score, target offset and screen for chained actions.
+ *
+ * Every session has its own registry (see SessionContext), and handles are random,
+ * so a client can neither guess nor use handles of another session.
+ *
+ * The registry is bounded: handles expire when they are not used for the time to live,
+ * and least recently used handles are evicted when capacity is exceeded.
+ */
+public class MatchRegistry {
+
+    public static final String PREFIX = "match:";
+    private static final int DEFAULT_CAPACITY = 256;
+    private static final long DEFAULT_TTL = 300 * 1000L;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    // least recently used first, so expired handles are always at the head
+    private final LinkedHashMap<String, Entry> matches = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private int capacity = DEFAULT_CAPACITY;
+    private long ttl = DEFAULT_TTL;
+    private long expired = 0;
+    private long evicted = 0;
+
+    public static boolean isHandle(Object value) {
+        return value instanceof String && ((String) value).startsWith(PREFIX);
+    }
+
+    /**
+     * Store match and return its handle.
+     */
+    public synchronized String put(Match match) {
+        long now = System.currentTimeMillis();
+        expire(now);
+        String handle;
+        do {
+            handle = PREFIX + String.format("%016x", RANDOM.nextLong());
+        } while (matches.containsKey(handle));
+        matches.put(handle, new Entry(match, now));
+        Iterator<Entry> iterator = matches.values().iterator();
+        while (matches.size() > capacity && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            evicted++;
+        }
+        return handle;
+    }
+
+    /**
+     * Return match of handle, and extend its time to live.
+     */
+    public synchronized Match get(String handle) {
+        long now = System.currentTimeMillis();
+        expire(now);
+        Entry entry = matches.get(handle);
+        if (entry == null) {
+            throw new IllegalArgumentException("Match handle " + handle + " is unknown or expired");
+        }
+        entry.used = now;
+        return entry.match;
+    }
+
+    public synchronized boolean release(String handle) {
+        return matches.remove(handle) != null;
+    }
+
+    public synchronized void clear() {
+        matches.clear();
+    }
+
+    private void expire(long now) {
+        Iterator<Entry> iterator = matches.values().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next().used <= ttl) {
+                break;
+            }
+            iterator.remove();
+            expired++;
+        }
+    }
+
+    /**
+     * Set maximum number of handles and time to live in milliseconds.
+     */
+    public synchronized void setLimits(int capacity, long ttl) {
+        this.capacity = Math.max(1, capacity);
+        this.ttl = Math.max(0, ttl);
+        expire(System.currentTimeMillis());
+        Iterator<Entry> iterator = matches.values().iterator();
+        while (matches.size() > this.capacity && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            evicted++;
+        }
+    }
+
+    public synchronized Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<String, Object>();
+        statistics.put("handles", matches.size());
+        statistics.put("capacity", capacity);
+        statistics.put("ttl", ttl / 1000.0);
+        statistics.put("expired", expired);
+        statistics.put("evicted", evicted);
+        return statistics;
+    }
+
+    private static class Entry {
+
+        private final Match match;
+        private long used;
+
+        private Entry(Match match, long used) {
+            this.match = match;
+            this.used = used;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.github.rainmanwy.robotframework.sikulilib.utils;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.github.rainmanwy.robotframework.sikulilib.exceptions.ScreenOperationException;
+
+import net.sourceforge.tess4j.ITessAPI.TessPageIteratorLevel;
+import net.sourceforge.tess4j.Word;
+
+import org.sikuli.script.Match;
+import org.sikuli.script.OCR;
+import org.sikuli.script.Region;
+import org.sikuli.script.ScreenImage;
+
+/**
+ * Cache of OCR results keyed by a hash of the pixels which were read.
+ *
+ * The key also contains OCR language and options, so changing them reads the text again.
+ * Text, lines and words are cached separately, line and word boxes are stored relative to the image
+ * and moved to the screen position of the image they are returned for.
+ * Failed reads are not cached, the exception goes to the keyword and the next read tries again.
+ */
+public class OcrCache {
+
+    private static final int MAX_ENTRIES = 256;
+    private static OcrCache MYSELF = null;
+
+    private final Map<String, Object> results = new LinkedHashMap<String, Object>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private long hits = 0;
+    private long misses = 0;
+
+    private OcrCache() {}
+
+    public static synchronized OcrCache getInstance() {
+        if (MYSELF == null) {
+            MYSELF = new OcrCache();
+        }
+        return MYSELF;
+    }
+
+    /**
+     * Return text of image.
+     */
+    public String readText(ScreenImage image) throws InterruptedException, ScreenOperationException {
+        String key = key("text", image.getImage());
+        Object text = get(key);
+        if (text == null) {
+            text = OcrEnginePool.getInstance().readText(image.getImage(), options());
+            put(key, text);
+        }
+        return (String) text;
+    }
+
+    /**
+     * Return text lines of image in screen coordinates, name of each match is its text.
+     */
+    public List<Match> readLines(ScreenImage image) throws InterruptedException {
+        List<Match> matches = new ArrayList<Match>();
+        for (Item item : items("lines", image)) {
+            matches.add(item.toMatch(image.getROI()));
+        }
+        return matches;
+    }
+
+    /**
+     * Return words of image in screen coordinates, name of each match is its text.
+     */
+    public List<Match> readWords(ScreenImage image) throws InterruptedException {
+        List<Match> matches = new ArrayList<Match>();
+        for (Item item : items("words", image)) {
+            matches.add(item.toMatch(image.getROI()));
+        }
+        return matches;
+    }
+
+    /**
+     * Return first line of image which contains text, or null if there is no such line.
+     */
+    public Match findLine(ScreenImage image, String text) throws InterruptedException {
+        for (Item item : items("lines", image)) {
+            if (item.text != null && item.text.contains(text)) {
+                return item.toMatch(image.getROI());
+            }
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Item> items(String kind, ScreenImage image) throws InterruptedException {
+        String key = key(kind, image.getImage());
+        List<Item> items = (List<Item>) get(key);
+        if (items == null) {
+            int level = "lines".equals(kind) ? TessPageIteratorLevel.RIL_TEXTLINE : TessPageIteratorLevel.RIL_WORD;
+            items = new ArrayList<Item>();
+            for (Word word : OcrEnginePool.getInstance().readWords(image.getImage(), options(), level)) {
+                items.add(new Item(word.getBoundingBox(), word.getConfidence(), word.getText()));
+            }
+            put(key, items);
+        }
+        return items;
+    }
+
+    private static OCR.Options options() {
+        return OcrEnginePool.options(SettingsSnapshot.current().getOcrLanguage());
+    }
+
+    private static String key(String kind, BufferedImage image) {
+        return kind + "|" + SettingsSnapshot.current().getOcrLanguage() + "|" + OCR.globalOptions() + "|" + ImageHash.toString(image);
+    }
+
+    private synchronized Object get(String key) {
+        Object result = results.get(key);
+        if (result == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return result;
+    }
+
+    private synchronized void put(String key, Object result) {
+        results.put(key, result);
+    }
+
+    public synchronized void clear() {
+        results.clear();
+    }
+
+    public synchronized Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new HashMap<String, Object>();
+        statistics.put("hits", hits);
+        statistics.put("misses", misses);
+        statistics.put("entries", results.size());
+        return statistics;
+    }
+
+    public synchronized void resetStatistics() {
+        hits = 0;
+        misses = 0;
+    }
+
+    private static class Item {
+
+        private final Rectangle bounds;
+        private final double score;
+        private final String text;
+
+        Item(Rectangle bounds, double score, String text) {
+            this.bounds = bounds;
+            this.score = score;
+            this.text = text;
+        }
+
+        Match toMatch(Rectangle origin) {
+            Match match = new Match(new Region(bounds.x + origin.x, bounds.y + origin.y, bounds.width, bounds.height), score);
+            match.setName(text);
+            return match;
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package com.github.rainmanwy.robotframework.sikulilib.utils;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import com.github.rainmanwy.robotframework.sikulilib.exceptions.ScreenOperationException;
+
+import net.sourceforge.tess4j.ITessAPI.TessPageIteratorLevel;
+import net.sourceforge.tess4j.Tesseract1;
+import net.sourceforge.tess4j.TesseractException;
+import net.sourceforge.tess4j.Word;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.sikuli.script.Image;
+import org.sikuli.script.Match;
+import org.sikuli.script.OCR;
+import org.sikuli.script.support.RunTime;
+
+/**
+ * Pools of initialized Tesseract engines, one pool per OCR language and options.
+ *
+ * SikuliX creates and initializes a new engine for every read, which loads the language data every time.
+ * Engines of the pool stay initialized and are reused, each engine is used by one thread at a time,
+ * so several threads can read text in parallel.
+ * Images are prepared like SikuliX does (gray, sharpened, resized to the text height of the options),
+ * so results are the same as with SikuliX OCR.
+ * If OCR can not be prepared or an engine can not be initialized, text is read by SikuliX OCR without a pool.
+ * Every pool is validated by one SikuliX read of an empty image before its first engine is created.
+ */
+public class OcrEnginePool {
+
+    private static final int POOL_SIZE = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    // text height SikuliX resizes images for
+    private static final float BEST_TEXT_HEIGHT = 30f;
+    private static OcrEnginePool MYSELF = null;
+
+    private final Map<String, Pool> pools = new HashMap<String, Pool>();
+    private ExecutorService prewarmExecutor = null;
+
+    private OcrEnginePool() {}
+
+    public static synchronized OcrEnginePool getInstance() {
+        if (MYSELF == null) {
+            MYSELF = new OcrEnginePool();
+        }
+        return MYSELF;
+    }
+
+    private synchronized ExecutorService getPrewarmExecutor() {
+        if (prewarmExecutor == null) {
+            prewarmExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "sikuli-ocr-prewarm");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return prewarmExecutor;
+    }
+
+    /**
+     * Initialize count engines for language (with current OCR options) in background.
+     */
+    public void prewarm(final String language, final int count) {
+        getPrewarmExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    getPool(options(language)).fill(Math.min(count, POOL_SIZE));
+                } catch (Exception e) {
+                    System.out.println("*WARN* Prepare OCR engines for " + language + " failed: " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    public void prewarm(String language) {
+        prewarm(language, POOL_SIZE);
+    }
+
+    /**
+     * Return global OCR options with language.
+     */
+    public static OCR.Options options(String language) {
+        return OCR.globalOptions().clone().language(language);
+    }
+
+    /**
+     * Return text of image, fail if the engine can not read it, so a failed read is never taken for an empty text.
+     */
+    public String readText(BufferedImage image, OCR.Options options) throws InterruptedException, ScreenOperationException {
+        Pool pool = getPool(options);
+        Engine engine = pool.borrow();
+        if (engine == null) {
+            return OCR.readText(image, options);
+        }
+        try {
+            return engine.doOCR(pool.optimize(image)).trim().replace("\n\n", "\n");
+        } catch (TesseractException e) {
+            throw new ScreenOperationException("OCR read failed: " + e.getMessage(), e);
+        } finally {
+            pool.release(engine);
+        }
+    }
+
+    /**
+     * Return text items of level (see ITessAPI.TessPageIteratorLevel), boxes are relative to image.
+     */
+    public List<Word> readWords(BufferedImage image, OCR.Options options, int level) throws InterruptedException {
+        Pool pool = getPool(options);
+        Engine engine = pool.borrow();
+        if (engine == null) {
+            return unpooledWords(image, options, level);
+        }
+        BufferedImage optimized;
+        List<Word> words;
+        try {
+            optimized = pool.optimize(image);
+            words = engine.getWords(optimized, level);
+        } finally {
+            pool.release(engine);
+        }
+        // boxes of the resized image are moved back to image, as SikuliX does
+        double factorX = (double) image.getWidth() / optimized.getWidth();
+        double factorY = (double) image.getHeight() / optimized.getHeight();
+        List<Word> result = new ArrayList<Word>();
+        for (Word word : words) {
+            Rectangle box = word.getBoundingBox();
+            Rectangle scaled = new Rectangle((int) (box.x * factorX) - 1, (int) (box.y * factorY) - 1,
+                    1 + (int) (box.width * factorX) + 2, 1 + (int) (box.height * factorY) + 2);
+            result.add(new Word(word.getText().trim(), word.getConfidence(), scaled));
+        }
+        return result;
+    }
+
+    private static List<Word> unpooledWords(BufferedImage image, OCR.Options options, int level) {
+        List<Match> matches = level == TessPageIteratorLevel.RIL_TEXTLINE
+                ? OCR.readLines(image, options) : OCR.readWords(image, options);
+        List<Word> words = new ArrayList<Word>();
+        for (Match match : matches) {
+            words.add(new Word(match.getText(), (float) (match.getScore() * 100), match.getRect()));
+        }
+        return words;
+    }
+
+    private Pool getPool(OCR.Options options) {
+        String key = options.language() + "|" + options;
+        synchronized (pools) {
+            Pool pool = pools.get(key);
+            if (pool == null) {
+                pool = new Pool(options);
+                pools.put(key, pool);
+            }
+            return pool;
+        }
+    }
+
+    private static class Pool {
+
+        private final LinkedList<Engine> idle = new LinkedList<Engine>();
+        private final OCR.Options options;
+        private boolean available = true;
+        private int created = 0;
+
+        Pool(OCR.Options options) {
+            this.options = options.clone();
+            try {
+                // a SikuliX read validates the installation and language data, and sets the default data path
+                // which options without data path use, options are cloned as SikuliX changes their page segmentation
+                OCR.readText(new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB), this.options.clone());
+                RunTime.loadLibrary(RunTime.libOpenCV);
+            } catch (RuntimeException e) {
+                unavailable(e);
+            } catch (LinkageError e) {
+                unavailable(e);
+            }
+        }
+
+        private synchronized void unavailable(Throwable e) {
+            if (available) {
+                System.out.println("*WARN* OCR engines for " + options.language() + " are not pooled: " + e.getMessage());
+                available = false;
+                notifyAll();
+            }
+        }
+
+        /**
+         * Return image prepared for reading: gray, sharpened and resized to the text height SikuliX reads best.
+         */
+        BufferedImage optimize(BufferedImage image) {
+            Mat mat = PreprocessedMatcher.toMat(Preprocessing.NONE.frame(image));
+            Imgproc.cvtColor(mat, mat, Imgproc.COLOR_BGR2GRAY);
+            unsharpMask(mat, 3);
+            float factor = BEST_TEXT_HEIGHT / options.textHeight();
+            if (factor > 0 && factor != 1) {
+                Image.resize(mat, factor, Image.Interpolation.LINEAR);
+            }
+            unsharpMask(mat, 5);
+            if (options.isLightFont()) {
+                Core.bitwise_not(mat, mat);
+            }
+            BufferedImage optimized = new BufferedImage(mat.cols(), mat.rows(), BufferedImage.TYPE_BYTE_GRAY);
+            mat.get(0, 0, ((DataBufferByte) optimized.getRaster().getDataBuffer()).getData());
+            return optimized;
+        }
+
+        private static void unsharpMask(Mat mat, double sigma) {
+            Mat blurred = new Mat();
+            Imgproc.GaussianBlur(mat, blurred, new Size(), sigma, sigma);
+            Core.addWeighted(mat, 1.5, blurred, -0.5, 0, mat);
+        }
+
+        /**
+         * Return an idle engine, a new one if the pool is not full yet, otherwise wait for an engine to be released.
+         * Return null if engines are not available, then text should be read without the pool.
+         */
+        Engine borrow() throws InterruptedException {
+            synchronized (this) {
+                while (available && idle.isEmpty() && created >= POOL_SIZE) {
+                    wait();
+                }
+                if (!available) {
+                    return null;
+                }
+                if (!idle.isEmpty()) {
+                    return idle.removeFirst();
+                }
+                created++;
+            }
+            try {
+                return new Engine(options);
+            } catch (RuntimeException e) {
+                unavailable(e);
+            } catch (LinkageError e) {
+                unavailable(e);
+            }
+            synchronized (this) {
+                created--;
+                notifyAll();
+            }
+            return null;
+        }
+
+        synchronized void release(Engine engine) {
+            idle.addFirst(engine);
+            notifyAll();
+        }
+
+        void fill(int count) throws InterruptedException {
+            List<Engine> engines = new ArrayList<Engine>();
+            try {
+                while (engines.size() < count) {
+                    Engine engine = borrow();
+                    if (engine == null) {
+                        return;
+                    }
+                    engines.add(engine);
+                }
+            } finally {
+                for (Engine engine : engines) {
+                    release(engine);
+                }
+            }
+        }
+    }
+
+    /**
+     * Tesseract engine which is initialized once, Tesseract1 initializes and disposes the engine around every read.
+     */
+    private static class Engine extends Tesseract1 {
+
+        private boolean initialized = false;
+
+        Engine(OCR.Options options) {
+            setOcrEngineMode(options.oem());
+            setPageSegMode(options.psm());
+            setLanguage(options.language());
+            setDatapath(options.dataPath());
+            for (Map.Entry<String, String> variable : options.variables().entrySet()) {
+                setTessVariable(variable.getKey(), variable.getValue());
+            }
+            if (!options.configs().isEmpty()) {
+                setConfigs(new ArrayList<String>(options.configs()));
+            }
+            init();
+        }
+
+        @Override
+        protected void init() {
+            if (!initialized) {
+                super.init();
+                initialized = true;
+            }
+        }
+
+        @Override
+        protected void dispose() {
+            // stays initialized for the next read
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package com.github.rainmanwy.robotframework.sikulilib.utils;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.imageio.ImageIO;
+
+import org.sikuli.basics.Settings;
+import org.sikuli.script.Image;
+import org.sikuli.script.ImagePath;
+import org.sikuli.script.Pattern;
+
+/**
+ * Cache of parsed locators and decoded template images.
+ *
+ * Locator strings (image.png, image.png = 0.9, image.png[gray,scale=0.5] = 0.9, text) are parsed once.
+ * Templates are decoded once per resolved path and file modification time, and shared by patterns
+ * of any similarity. They are evicted in LRU order when the decoded size exceeds the byte budget.
+ *
+ * Preprocessing (see Preprocessing) is declared in brackets after the image name, or for image names
+ * in a manifest file. Preprocessed templates are cached next to the decoded ones.
+ */
+public class PatternCache {
+
+    private static final int MAX_LOCATORS = 1024;
+    private static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    private static PatternCache MYSELF = null;
+
+    private final Map<String, Locator> locators = new LinkedHashMap<String, Locator>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Locator> eldest) {
+            return size() > MAX_LOCATORS;
+        }
+    };
+    private final LinkedHashMap<String, BufferedImage> templates = new LinkedHashMap<String, BufferedImage>(16, 0.75f, true);
+    private Map<String, Preprocessing> manifest = new HashMap<String, Preprocessing>();
+    private long maxBytes = DEFAULT_MAX_BYTES;
+    private long bytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    private PatternCache() {}
+
+    public static synchronized PatternCache getInstance() {
+        if (MYSELF == null) {
+            MYSELF = new PatternCache();
+        }
+        return MYSELF;
+    }
+
+    /**
+     * Return a new pattern for locator, decoded template is shared with previous calls.
+     * Locators which are not png files, or could not be resolved to a local file, are not cached.
+     */
+    public Pattern getPattern(String locatorString) {
+        return getPattern(locatorString, Settings.MinSimilarity);
+    }
+
+    /**
+     * Return a new pattern for locator, defaultSimilarity is used when locator has no similarity.
+     */
+    public Pattern getPattern(String locatorString, double defaultSimilarity) {
+        Locator locator = parse(locatorString);
+        if (!locator.isImage) {
+            return new Pattern(locator.name);
+        }
+        float similarity = locator.similarity != null ? locator.similarity : (float) defaultSimilarity;
+        File file = resolve(locator.name);
+        if (file == null) {
+            return new Pattern(locator.name).similar(similarity);
+        }
+        BufferedImage template = getTemplate(file);
+        if (template == null) {
+            return new Pattern(locator.name).similar(similarity);
+        }
+        Image image = new Image(template);
+        image.setName(locator.name);
+        Preprocessing preprocessing = locator.preprocessing != null ? locator.preprocessing : getManifest(locator.name);
+        if (preprocessing == null || preprocessing.isNone()) {
+            return new Pattern(image).similar(similarity);
+        }
+        BufferedImage cropped = preprocessing.crop(template);
+        return new PreprocessedPattern(image, preprocessing, getPreprocessed(file, template, preprocessing),
+                new Dimension(cropped.getWidth(), cropped.getHeight())).similar(similarity);
+    }
+
+    private synchronized Preprocessing getManifest(String name) {
+        Preprocessing preprocessing = manifest.get(name);
+        return preprocessing != null ? preprocessing : manifest.get(new File(name).getName());
+    }
+
+    /**
+     * Load preprocessing of image names from a properties file, like "login.png = gray,scale=0.5".
+     * Preprocessing declared in a locator takes precedence.
+     */
+    public void loadManifest(String path) throws IOException {
+        Properties properties = new Properties();
+        InputStream in = new FileInputStream(path);
+        try {
+            properties.load(in);
+        } finally {
+            in.close();
+        }
+        Map<String, Preprocessing> loaded = new HashMap<String, Preprocessing>();
+        for (String name : properties.stringPropertyNames()) {
+            try {
+                loaded.put(name, Preprocessing.parse(properties.getProperty(name)));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid preprocessing of " + name + " in " + path + ": " + e.getMessage());
+            }
+        }
+        synchronized (this) {
+            manifest = loaded;
+        }
+    }
+
+    private synchronized Locator parse(String locatorString) {
+        Locator locator = locators.get(locatorString);
+        if (locator == null) {
+            locator = new Locator(locatorString);
+            locators.put(locatorString, locator);
+        }
+        return locator;
+    }
+
+    private File resolve(String name) {
+        File file = new File(name);
+        if (file.isAbsolute()) {
+            return file.isFile() ? file : null;
+        }
+        URL url = ImagePath.find(name);
+        if (url == null || !"file".equals(url.getProtocol())) {
+            return null;
+        }
+        try {
+            return new File(url.toURI());
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Return decoded image of file, null if it could not be decoded.
+     * Similarity is applied on the pattern, so the decoded image does not depend on it.
+     */
+    BufferedImage getTemplate(File file) {
+        String key = file.getAbsolutePath() + "|" + file.lastModified();
+        synchronized (this) {
+            BufferedImage template = templates.get(key);
+            if (template != null) {
+                hits++;
+                return template;
+            }
+            misses++;
+        }
+        BufferedImage template;
+        try {
+            template = ImageIO.read(file);
+        } catch (IOException e) {
+            return null;
+        }
+        if (template == null) {
+            return null;
+        }
+        synchronized (this) {
+            if (!templates.containsKey(key)) {
+                templates.put(key, template);
+                bytes += sizeOf(template);
+                evict();
+            }
+        }
+        return template;
+    }
+
+    private BufferedImage getPreprocessed(File file, BufferedImage template, Preprocessing preprocessing) {
+        String key = file.getAbsolutePath() + "|" + preprocessing + "|" + file.lastModified();
+        synchronized (this) {
+            BufferedImage preprocessed = templates.get(key);
+            if (preprocessed != null) {
+                hits++;
+                return preprocessed;
+            }
+            misses++;
+        }
+        BufferedImage preprocessed = preprocessing.template(template);
+        synchronized (this) {
+            if (!templates.containsKey(key)) {
+                templates.put(key, preprocessed);
+                bytes += sizeOf(preprocessed);
+                evict();
+            }
+        }
+        return preprocessed;
+    }
+
+    private void evict() {
+        Iterator<BufferedImage> iterator = templates.values().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            bytes -= sizeOf(iterator.next());
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    private static long sizeOf(BufferedImage image) {
+        return (long) image.getWidth() * image.getHeight() * 4;
+    }
+
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        evict();
+    }
+
+    public synchronized void clear() {
+        locators.clear();
+        templates.clear();
+        bytes = 0;
+    }
+
+    public synchronized Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new HashMap<String, Object>();
+        statistics.put("hits", hits);
+        statistics.put("misses", misses);
+        statistics.put("evictions", evictions);
+        statistics.put("entries", templates.size());
+        statistics.put("bytes", bytes);
+        statistics.put("maxBytes", maxBytes);
+        return statistics;
+    }
+
+    public synchronized void resetStatistics() {
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+    }
+
+    /**
+     * Parsed locator string. It can be either of the following:
+     * - Image.png
+     * - Text
+     * - Image.png = 0.9
+     * - Image.png[gray,scale=0.5] = 0.9
+     */
+    private static class Locator {
+
+        private final String name;
+        private final Float similarity;
+        private final boolean isImage;
+        private final Preprocessing preprocessing;
+
+        Locator(String locator) {
+            int open = locator.indexOf("[", locator.indexOf(".png") + 1);
+            int close = open < 0 ? -1 : locator.indexOf("]", open);
+            if (locator.contains(".png") && close > open) {
+                preprocessing = Preprocessing.parse(locator.substring(open + 1, close));
+                locator = locator.substring(0, open) + locator.substring(close + 1);
+            } else {
+                preprocessing = null;
+            }
+            if (locator.contains(".png")) {
+                isImage = true;
+                if (locator.contains("=")) {
+                    locator = locator.replace(" ", "");
+                    name = locator.substring(0, locator.indexOf("="));
+                    similarity = Float.parseFloat(locator.substring(locator.indexOf("=") + 1));
+                } else {
+                    name = locator;
+                    similarity = null;
+                }
+            } else {
+                isImage = false;
+                name = locator;
+                similarity = null;
+            }
+        }
+    }
+}
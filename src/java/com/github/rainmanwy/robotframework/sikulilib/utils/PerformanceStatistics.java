@@ -0,0 +1,185 @@
+package com.github.rainmanwy.robotframework.sikulilib.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Latency histograms per keyword and per internal phase of keywords (capture, match, save, ocr, input, preprocess).
+ *
+ * Recording is a bucket increment in a log2 histogram of microseconds, so it is cheap enough to stay enabled.
+ * Percentiles are approximated with the upper bound of the bucket.
+ * Waits are counted per kind of wait: how many waits succeeded, and how many polls and matches they needed.
+ */
+public class PerformanceStatistics {
+
+    public static final String CAPTURE = "capture";
+    public static final String MATCH = "match";
+    public static final String SAVE = "save";
+    public static final String OCR = "ocr";
+    public static final String INPUT = "input";
+    public static final String PREPROCESS = "preprocess";
+
+    private static PerformanceStatistics MYSELF = null;
+
+    private final Map<String, Histogram> keywords = new HashMap<String, Histogram>();
+    private final Map<String, Histogram> phases = new HashMap<String, Histogram>();
+    private final Map<String, long[]> waits = new HashMap<String, long[]>();
+
+    private PerformanceStatistics() {}
+
+    public static synchronized PerformanceStatistics getInstance() {
+        if (MYSELF == null) {
+            MYSELF = new PerformanceStatistics();
+        }
+        return MYSELF;
+    }
+
+    public static long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Record time since start (from start()) for keyword.
+     */
+    public void recordKeyword(String keyword, long start) {
+        histogram(keywords, keyword).record(System.nanoTime() - start);
+    }
+
+    /**
+     * Record time since start (from start()) for phase.
+     */
+    public void recordPhase(String phase, long start) {
+        histogram(phases, phase).record(System.nanoTime() - start);
+    }
+
+    /**
+     * Record polls and match attempts of a finished wait.
+     */
+    public void recordWait(String wait, int polls, int matches, boolean found) {
+        synchronized (waits) {
+            long[] counts = waits.get(wait);
+            if (counts == null) {
+                counts = new long[4];
+                waits.put(wait, counts);
+            }
+            counts[0]++;
+            counts[1] += found ? 1 : 0;
+            counts[2] += polls;
+            counts[3] += matches;
+        }
+    }
+
+    private static Histogram histogram(Map<String, Histogram> histograms, String name) {
+        synchronized (histograms) {
+            Histogram histogram = histograms.get(name);
+            if (histogram == null) {
+                histogram = new Histogram();
+                histograms.put(name, histogram);
+            }
+            return histogram;
+        }
+    }
+
+    /**
+     * Return {"keywords": {name: summary}, "phases": {name: summary}, "waits": {name: counts}},
+     * times are in milliseconds.
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new HashMap<String, Object>();
+        statistics.put("keywords", summarize(keywords));
+        statistics.put("phases", summarize(phases));
+        statistics.put("waits", summarizeWaits());
+        return statistics;
+    }
+
+    private Map<String, Object> summarizeWaits() {
+        Map<String, Object> summaries = new TreeMap<String, Object>();
+        synchronized (waits) {
+            for (Map.Entry<String, long[]> entry : waits.entrySet()) {
+                long[] counts = entry.getValue();
+                Map<String, Object> summary = new HashMap<String, Object>();
+                summary.put("count", counts[0]);
+                summary.put("found", counts[1]);
+                summary.put("polls", counts[2]);
+                summary.put("matches", counts[3]);
+                summary.put("pollsPerWait", (double) counts[2] / counts[0]);
+                summaries.put(entry.getKey(), summary);
+            }
+        }
+        return summaries;
+    }
+
+    private static Map<String, Object> summarize(Map<String, Histogram> histograms) {
+        Map<String, Object> summaries = new TreeMap<String, Object>();
+        synchronized (histograms) {
+            for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+                summaries.put(entry.getKey(), entry.getValue().summary());
+            }
+        }
+        return summaries;
+    }
+
+    public void reset() {
+        synchronized (keywords) {
+            keywords.clear();
+        }
+        synchronized (phases) {
+            phases.clear();
+        }
+        synchronized (waits) {
+            waits.clear();
+        }
+    }
+
+    private static class Histogram {
+
+        private static final int BUCKETS = 40;
+
+        // bucket i counts latencies below 2^i microseconds
+        private final long[] buckets = new long[BUCKETS];
+        private long count = 0;
+        private long total = 0;
+        private long min = Long.MAX_VALUE;
+        private long max = 0;
+
+        synchronized void record(long nanos) {
+            long micros = Math.max(0, nanos / 1000);
+            int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+            buckets[bucket]++;
+            count++;
+            total += nanos;
+            min = Math.min(min, nanos);
+            max = Math.max(max, nanos);
+        }
+
+        synchronized Map<String, Object> summary() {
+            Map<String, Object> summary = new HashMap<String, Object>();
+            summary.put("count", count);
+            summary.put("total", toMillis(total));
+            summary.put("mean", count == 0 ? 0.0 : toMillis(total / count));
+            summary.put("min", count == 0 ? 0.0 : toMillis(min));
+            summary.put("max", toMillis(max));
+            summary.put("p50", percentile(0.5));
+            summary.put("p90", percentile(0.9));
+            summary.put("p99", percentile(0.99));
+            return summary;
+        }
+
+        private double percentile(double p) {
+            long wanted = (long) Math.ceil(count * p);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets[i];
+                if (seen >= wanted && seen > 0) {
+                    return Math.min(toMillis(max), (1L << i) / 1000.0);
+                }
+            }
+            return toMillis(max);
+        }
+
+        private static double toMillis(long nanos) {
+            return nanos / 1e6;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.github.rainmanwy.robotframework.sikulilib.utils;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Detect whether a region changed compared to a reference frame kept in memory.
+ *
+ * Pixels are compared row by row (alpha is ignored), and comparing stops as soon as more pixels
+ * than the threshold allows differ, so a changed region usually costs a fraction of one pass.
+ * Unlike matching the reference as a template, nothing is encoded, written or searched.
+ */
+public class PixelChangeDetector {
+
+    private final int width;
+    private final int height;
+    private final int[] reference;
+    private double lastFraction = 0;
+
+    public PixelChangeDetector(BufferedImage reference) {
+        this.width = reference.getWidth();
+        this.height = reference.getHeight();
+        this.reference = reference.getRGB(0, 0, width, height, null, 0, width);
+    }
+
+    /**
+     * Return true if more than threshold (fraction between 0 and 1) of the pixels of frame differ from the reference.
+     * A frame of another size always counts as changed.
+     */
+    public boolean isChanged(BufferedImage frame, double threshold) {
+        if (frame.getWidth() != width || frame.getHeight() != height) {
+            lastFraction = 1;
+            return true;
+        }
+        long total = (long) width * height;
+        long allowed = (long) Math.floor(total * Math.max(0, threshold));
+        long changed = 0;
+        int[] line = new int[width];
+        for (int y = 0; y < height; y++) {
+            frame.getRGB(0, y, width, 1, line, 0, width);
+            int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                if (((line[x] ^ reference[offset + x]) & 0xffffff) != 0) {
+                    changed++;
+                }
+            }
+            if (changed > allowed) {
+                lastFraction = (double) changed / total;
+                return true;
+            }
+        }
+        lastFraction = total == 0 ? 0 : (double) changed / total;
+        return false;
+    }
+
+    /**
+     * Return fraction of changed pixels found by the last check, a lower bound if the check stopped early.
+     */
+    public double getLastFraction() {
+        return lastFraction;
+    }
+}
@@ -0,0 +1,157 @@
+package com.github.rainmanwy.robotframework.sikulilib.utils;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfDouble;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+import org.sikuli.script.Match;
+import org.sikuli.script.Region;
+import org.sikuli.script.ScreenImage;
+import org.sikuli.script.support.IScreen;
+import org.sikuli.script.support.RunTime;
+
+/**
+ * Match preprocessed patterns with OpenCV directly, SikuliX only matches color images.
+ *
+ * A frame is preprocessed once per capture and preprocessing (the frame key, crop does not matter),
+ * however many locators are matched against it: preprocessed frames are kept as long as the captured image is alive.
+ * Matches are mapped back to screen coordinates, and cover the cropped part of the template in original size.
+ */
+public class PreprocessedMatcher {
+
+    private static final int MAX_MATCHES = 100;
+    private static boolean loaded = false;
+
+    private static final Map<BufferedImage, Map<String, Mat>> frames = new WeakHashMap<BufferedImage, Map<String, Mat>>();
+    private static final Map<BufferedImage, Mat> templates = new WeakHashMap<BufferedImage, Mat>();
+
+    private PreprocessedMatcher() {}
+
+    private static synchronized void load() {
+        if (!loaded) {
+            RunTime.loadLibrary(RunTime.libOpenCV);
+            loaded = true;
+        }
+    }
+
+    /**
+     * Find pattern in frame, frame should be captured from region. Return null if pattern is not found.
+     */
+    public static Match find(ScreenImage frame, Region region, PreprocessedPattern pattern) {
+        List<Match> matches = search(frame, region, pattern, 1);
+        return matches.isEmpty() ? null : matches.get(0);
+    }
+
+    /**
+     * Find all occurrences of pattern in frame, best first.
+     */
+    public static List<Match> findAll(ScreenImage frame, Region region, PreprocessedPattern pattern) {
+        return search(frame, region, pattern, MAX_MATCHES);
+    }
+
+    private static List<Match> search(ScreenImage frame, Region region, PreprocessedPattern pattern, int limit) {
+        load();
+        Mat image = frameMat(frame.getImage(), pattern.getPreprocessing());
+        Mat template = templateMat(pattern.getTemplate());
+        List<Match> matches = new ArrayList<Match>();
+        if (template.cols() > image.cols() || template.rows() > image.rows()) {
+            return matches;
+        }
+        Mat result = new Mat();
+        if (isPlain(template)) {
+            // normalized correlation is undefined for a single color template, score by squared difference instead
+            Imgproc.matchTemplate(image, template, result, Imgproc.TM_SQDIFF);
+            double worst = template.total() * template.channels() * 255.0 * 255.0;
+            Core.multiply(result, new Scalar(-1.0 / worst), result);
+            Core.add(result, new Scalar(1.0), result);
+        } else {
+            Imgproc.matchTemplate(image, template, result, Imgproc.TM_CCOEFF_NORMED);
+        }
+        double scale = pattern.getPreprocessing().getScale();
+        Rectangle bounds = frame.getROI();
+        Dimension size = pattern.getSize();
+        IScreen screen = region != null ? region.getScreen() : null;
+        while (matches.size() < limit) {
+            Core.MinMaxLocResult best = Core.minMaxLoc(result);
+            if (best.maxVal < pattern.getSimilar()) {
+                break;
+            }
+            int x = bounds.x + (int) Math.round(best.maxLoc.x / scale);
+            int y = bounds.y + (int) Math.round(best.maxLoc.y / scale);
+            matches.add(new Match(x, y, size.width, size.height, best.maxVal, screen));
+            // clear scores around the match, so the next best is another occurrence
+            Imgproc.rectangle(result,
+                    new Point(best.maxLoc.x - template.cols() / 2, best.maxLoc.y - template.rows() / 2),
+                    new Point(best.maxLoc.x + template.cols() / 2, best.maxLoc.y + template.rows() / 2),
+                    new Scalar(-2.0), -1);
+        }
+        return matches;
+    }
+
+    private static Mat frameMat(BufferedImage image, Preprocessing preprocessing) {
+        Map<String, Mat> preprocessed;
+        synchronized (frames) {
+            preprocessed = frames.get(image);
+            if (preprocessed == null) {
+                preprocessed = new HashMap<String, Mat>();
+                frames.put(image, preprocessed);
+            }
+        }
+        synchronized (preprocessed) {
+            Mat mat = preprocessed.get(preprocessing.frameKey());
+            if (mat == null) {
+                long start = PerformanceStatistics.start();
+                mat = toMat(preprocessing.frame(image));
+                PerformanceStatistics.getInstance().recordPhase(PerformanceStatistics.PREPROCESS, start);
+                preprocessed.put(preprocessing.frameKey(), mat);
+            }
+            return mat;
+        }
+    }
+
+    private static Mat templateMat(BufferedImage template) {
+        synchronized (templates) {
+            Mat mat = templates.get(template);
+            if (mat == null) {
+                mat = toMat(template);
+                templates.put(template, mat);
+            }
+            return mat;
+        }
+    }
+
+    /**
+     * Wrap a TYPE_BYTE_GRAY or TYPE_3BYTE_BGR image, as returned by Preprocessing.
+     */
+    static Mat toMat(BufferedImage image) {
+        boolean gray = image.getType() == BufferedImage.TYPE_BYTE_GRAY;
+        Mat mat = new Mat(image.getHeight(), image.getWidth(), gray ? CvType.CV_8UC1 : CvType.CV_8UC3);
+        mat.put(0, 0, ((DataBufferByte) image.getRaster().getDataBuffer()).getData());
+        return mat;
+    }
+
+    private static boolean isPlain(Mat template) {
+        MatOfDouble mean = new MatOfDouble();
+        MatOfDouble deviation = new MatOfDouble();
+        Core.meanStdDev(template, mean, deviation);
+        for (double value : deviation.toArray()) {
+            if (value > 1e-6) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,45 @@
+package com.github.rainmanwy.robotframework.sikulilib.utils;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+
+import org.sikuli.script.Image;
+import org.sikuli.script.Pattern;
+
+/**
+ * Pattern of a locator with preprocessing, matched by PreprocessedMatcher instead of SikuliX.
+ * It keeps the original image (for SikuliX features like highlight), and the preprocessed template from PatternCache.
+ */
+public class PreprocessedPattern extends Pattern {
+
+    private final Preprocessing preprocessing;
+    private final BufferedImage template;
+    private final Dimension size;
+
+    /**
+     * Template should be preprocessed already, size is the size of the matched part on screen (after crop, before scale).
+     */
+    public PreprocessedPattern(Image image, Preprocessing preprocessing, BufferedImage template, Dimension size) {
+        super(image);
+        this.preprocessing = preprocessing;
+        this.template = template;
+        this.size = size;
+    }
+
+    public Preprocessing getPreprocessing() {
+        return preprocessing;
+    }
+
+    public BufferedImage getTemplate() {
+        return template;
+    }
+
+    public Dimension getSize() {
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + "[" + preprocessing + "]";
+    }
+}
@@ -0,0 +1,177 @@
+package com.github.rainmanwy.robotframework.sikulilib.utils;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+
+/**
+ * Preprocessing of a locator, applied to its template once and to every frame it is matched against.
+ *
+ * Written as a comma separated list, like "gray,scale=0.5,crop=10:0:40:20,threshold=128":
+ * - gray: match luminance only, a single channel is about three times faster to match than color
+ * - scale=f: downscale template and frame by f (greater than 0, at most 1)
+ * - crop=x:y:w:h: match only this part of the template (template pixels), matches cover that part
+ * - threshold=t: black and white, luminance of at least t (0 to 255) is white, implies gray
+ *
+ * Images are converted to byte images (BGR, or gray) which can be matched without another conversion.
+ */
+public final class Preprocessing {
+
+    public static final Preprocessing NONE = new Preprocessing(false, 1.0, null, -1);
+
+    private final boolean gray;
+    private final double scale;
+    private final Rectangle crop;
+    private final int threshold;
+
+    public Preprocessing(boolean gray, double scale, Rectangle crop, int threshold) {
+        if (scale <= 0 || scale > 1) {
+            throw new IllegalArgumentException("Scale should be greater than 0 and at most 1, not " + scale);
+        }
+        if (threshold > 255) {
+            throw new IllegalArgumentException("Threshold should be between 0 and 255, not " + threshold);
+        }
+        if (crop != null && (crop.x < 0 || crop.y < 0 || crop.width <= 0 || crop.height <= 0)) {
+            throw new IllegalArgumentException("Crop should be x:y:w:h with positive size, not " + crop);
+        }
+        this.gray = gray || threshold >= 0;
+        this.scale = scale;
+        this.crop = crop;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Parse preprocessing like "gray,scale=0.5", empty string is no preprocessing.
+     */
+    public static Preprocessing parse(String spec) {
+        boolean gray = false;
+        double scale = 1.0;
+        Rectangle crop = null;
+        int threshold = -1;
+        for (String step : spec.split(",")) {
+            step = step.trim();
+            if (step.isEmpty()) {
+                continue;
+            }
+            String value = step.contains("=") ? step.substring(step.indexOf("=") + 1).trim() : null;
+            String name = step.contains("=") ? step.substring(0, step.indexOf("=")).trim() : step;
+            try {
+                if (name.equals("gray") || name.equals("grayscale")) {
+                    gray = true;
+                } else if (name.equals("scale") && value != null) {
+                    scale = Double.parseDouble(value);
+                } else if (name.equals("threshold") && value != null) {
+                    threshold = Integer.parseInt(value);
+                } else if (name.equals("crop") && value != null) {
+                    String[] parts = value.split(":");
+                    if (parts.length != 4) {
+                        throw new IllegalArgumentException("Crop should be x:y:w:h, not " + value);
+                    }
+                    crop = new Rectangle(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()),
+                            Integer.parseInt(parts[2].trim()), Integer.parseInt(parts[3].trim()));
+                } else {
+                    throw new IllegalArgumentException("Unknown preprocessing step '" + step + "' in '" + spec + "'");
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid value of preprocessing step '" + step + "' in '" + spec + "'");
+            }
+        }
+        Preprocessing preprocessing = new Preprocessing(gray, scale, crop, threshold);
+        return preprocessing.isNone() ? NONE : preprocessing;
+    }
+
+    public boolean isNone() {
+        return !gray && scale == 1.0 && crop == null;
+    }
+
+    public double getScale() {
+        return scale;
+    }
+
+    /**
+     * Return template cropped to the matched part, template itself without crop.
+     */
+    public BufferedImage crop(BufferedImage template) {
+        if (crop == null) {
+            return template;
+        }
+        Rectangle area = crop.intersection(new Rectangle(0, 0, template.getWidth(), template.getHeight()));
+        if (area.isEmpty()) {
+            throw new IllegalArgumentException("Crop " + crop + " is outside of template of size "
+                    + template.getWidth() + "x" + template.getHeight());
+        }
+        return template.getSubimage(area.x, area.y, area.width, area.height);
+    }
+
+    /**
+     * Return cropped template scaled and converted like frames.
+     */
+    public BufferedImage template(BufferedImage template) {
+        return frame(crop(template));
+    }
+
+    /**
+     * Return frame scaled and converted to a gray (TYPE_BYTE_GRAY) or color (TYPE_3BYTE_BGR) byte image.
+     */
+    public BufferedImage frame(BufferedImage frame) {
+        if (scale < 1.0) {
+            int width = Math.max(1, (int) Math.round(frame.getWidth() * scale));
+            int height = Math.max(1, (int) Math.round(frame.getHeight() * scale));
+            BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = scaled.createGraphics();
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(frame, 0, 0, width, height, null);
+            graphics.dispose();
+            frame = scaled;
+        }
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        BufferedImage result = new BufferedImage(width, height,
+                gray ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_3BYTE_BGR);
+        byte[] data = ((DataBufferByte) result.getRaster().getDataBuffer()).getData();
+        // screen captures are int RGB images, their pixels are read directly instead of through getRGB
+        int[] pixels = ImageHash.plainPixels(frame);
+        int[] line = pixels != null ? pixels : new int[width];
+        int index = 0;
+        for (int y = 0; y < height; y++) {
+            int offset = 0;
+            if (pixels != null) {
+                offset = y * width;
+            } else {
+                frame.getRGB(0, y, width, 1, line, 0, width);
+            }
+            for (int x = 0; x < width; x++) {
+                int rgb = line[offset + x];
+                int r = (rgb >> 16) & 0xff;
+                int g = (rgb >> 8) & 0xff;
+                int b = rgb & 0xff;
+                if (gray) {
+                    int luminance = (r * 77 + g * 150 + b * 29) >> 8;
+                    if (threshold >= 0) {
+                        luminance = luminance >= threshold ? 255 : 0;
+                    }
+                    data[index++] = (byte) luminance;
+                } else {
+                    data[index++] = (byte) b;
+                    data[index++] = (byte) g;
+                    data[index++] = (byte) r;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Return the frame part of this preprocessing, frames preprocessed alike can be shared by several locators.
+     */
+    public String frameKey() {
+        return (gray ? "gray" : "color") + ",scale=" + scale + (threshold >= 0 ? ",threshold=" + threshold : "");
+    }
+
+    @Override
+    public String toString() {
+        return frameKey() + (crop != null ? ",crop=" + crop.x + ":" + crop.y + ":" + crop.width + ":" + crop.height : "");
+    }
+}
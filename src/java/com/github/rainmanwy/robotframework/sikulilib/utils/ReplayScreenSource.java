@@ -0,0 +1,169 @@
+package com.github.rainmanwy.robotframework.sikulilib.utils;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import org.sikuli.script.Region;
+import org.sikuli.script.Screen;
+import org.sikuli.script.ScreenImage;
+
+/**
+ * Serve frames from png files instead of the real screen, input actions are only logged.
+ *
+ * Source could be a single png file, a folder of png files which are shown in name order,
+ * or a recorded session: a folder with session.txt, each line is "millis file [x y]",
+ * millis is the time since start when the frame appears, x and y the screen position of the frame (default 0 0).
+ * With a frame interval of 0 every capture to search or read steps to the next frame (snapshots do not step),
+ * otherwise frames follow the wall clock.
+ * The last frame stays on screen.
+ */
+public class ReplayScreenSource implements ScreenSource {
+
+    public static final String SESSION_FILE = "session.txt";
+
+    private final List<Frame> frames = new ArrayList<Frame>();
+    private final boolean stepping;
+    private long start = -1;
+    private int step = 0;
+    private int loadedIndex = -1;
+    private BufferedImage loaded = null;
+
+    /**
+     * Replay source, frameInterval is milliseconds between frames of a png folder, 0 steps a frame per capture.
+     */
+    public ReplayScreenSource(String source, long frameInterval) throws IOException {
+        File file = new File(source);
+        File session = new File(file, SESSION_FILE);
+        if (file.isFile()) {
+            frames.add(new Frame(0, file, 0, 0));
+        } else if (session.isFile()) {
+            loadSession(file, session);
+        } else if (file.isDirectory()) {
+            File[] images = file.listFiles(new FilenameFilter() {
+                @Override
+                public boolean accept(File dir, String name) {
+                    return name.toLowerCase().endsWith(".png");
+                }
+            });
+            Arrays.sort(images);
+            for (int i = 0; i < images.length; i++) {
+                frames.add(new Frame(i * frameInterval, images[i], 0, 0));
+            }
+        }
+        if (frames.isEmpty()) {
+            throw new IOException("No frames found in " + source);
+        }
+        stepping = frameInterval <= 0 && !session.isFile();
+    }
+
+    private void loadSession(File folder, File session) throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(session));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] values = line.trim().split("\\s+");
+                if (values.length < 2 || values[0].startsWith("#")) {
+                    continue;
+                }
+                int x = values.length >= 4 ? Integer.parseInt(values[2]) : 0;
+                int y = values.length >= 4 ? Integer.parseInt(values[3]) : 0;
+                frames.add(new Frame(Long.parseLong(values[0]), new File(folder, values[1]), x, y));
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Override
+    public ScreenImage capture(Screen screen, Region region) {
+        return show(region, true);
+    }
+
+    @Override
+    public ScreenImage snapshot(Screen screen, Region region) {
+        return show(region, false);
+    }
+
+    private ScreenImage show(Region region, boolean advance) {
+        Rectangle rect = region.getRect();
+        Frame frame;
+        BufferedImage image;
+        synchronized (this) {
+            int index = nextIndex(advance);
+            frame = frames.get(index);
+            image = load(index);
+        }
+        // region outside of the frame stays black
+        BufferedImage copy = new BufferedImage(rect.width, rect.height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = copy.createGraphics();
+        try {
+            graphics.drawImage(image, frame.x - rect.x, frame.y - rect.y, null);
+        } finally {
+            graphics.dispose();
+        }
+        return new ScreenImage(rect, copy);
+    }
+
+    @Override
+    public boolean performsInput() {
+        return false;
+    }
+
+    private int nextIndex(boolean advance) {
+        if (stepping) {
+            int index = advance ? step++ : Math.max(0, step - 1);
+            return Math.min(index, frames.size() - 1);
+        }
+        long now = System.currentTimeMillis();
+        if (start < 0) {
+            start = now;
+        }
+        int index = 0;
+        while (index + 1 < frames.size() && frames.get(index + 1).offset <= now - start) {
+            index++;
+        }
+        return index;
+    }
+
+    private BufferedImage load(int index) {
+        if (index != loadedIndex) {
+            File file = frames.get(index).file;
+            try {
+                loaded = ImageIO.read(file);
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not read replay frame " + file + ": " + e.getMessage(), e);
+            }
+            if (loaded == null) {
+                throw new IllegalStateException("Replay frame " + file + " is not an image");
+            }
+            loadedIndex = index;
+        }
+        return loaded;
+    }
+
+    private static class Frame {
+
+        private final long offset;
+        private final File file;
+        private final int x;
+        private final int y;
+
+        Frame(long offset, File file, int x, int y) {
+            this.offset = offset;
+            this.file = file;
+            this.x = x;
+            this.y = y;
+        }
+    }
+}
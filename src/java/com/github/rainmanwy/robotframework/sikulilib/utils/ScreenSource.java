@@ -0,0 +1,29 @@
+package com.github.rainmanwy.robotframework.sikulilib.utils;
+
+import org.sikuli.script.Region;
+import org.sikuli.script.Screen;
+import org.sikuli.script.ScreenImage;
+
+/**
+ * Where keywords get screen content from.
+ *
+ * The live source captures the real screen, other sources (see ReplayScreenSource) serve prepared frames,
+ * so keywords can be run and measured without a real desktop.
+ */
+public interface ScreenSource {
+
+    /**
+     * Return image of region on screen to search or read, a replay source could step to its next frame.
+     */
+    ScreenImage capture(Screen screen, Region region);
+
+    /**
+     * Return image of region on screen for a screenshot, it shows what the last capture() saw and never steps a replay.
+     */
+    ScreenImage snapshot(Screen screen, Region region);
+
+    /**
+     * Return true if mouse and keyboard actions should be performed, false if they should only be logged.
+     */
+    boolean performsInput();
+}
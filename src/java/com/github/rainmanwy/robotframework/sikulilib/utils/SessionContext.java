@@ -0,0 +1,204 @@
+package com.github.rainmanwy.robotframework.sikulilib.utils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.sikuli.script.Match;
+import org.sikuli.script.Region;
+import org.sikuli.script.Screen;
+
+/**
+ * Screen state of one client: screen, region of interest, screen source, frame grabber, timeout, similarity,
+ * capture folder and policy, and matches kept for highlights, later actions and match handles.
+ *
+ * The library served at "/" uses the default session, every session opened with Open Session is served
+ * at its own path, so several clients can use one server without seeing each other's state.
+ * Keywords read the session of the library which runs them, see current().
+ * Keywords of one session could run concurrently: state is replaced instead of changed in place,
+ * and settings are read from the snapshot taken when the keyword started (see SettingsSnapshot).
+ */
+public class SessionContext {
+
+    public static final String DEFAULT_ID = "default";
+    private static double DEFAULT_TIMEOUT = 3.0;
+    private static SessionContext DEFAULT = null;
+    private static final ThreadLocal<SessionContext> CURRENT = new ThreadLocal<SessionContext>();
+
+    private final String id;
+    private final CaptureFolder captureFolder;
+    private final Map<String, Match> highlights = new ConcurrentHashMap<String, Match>();
+    private final MatchRegistry matchRegistry = new MatchRegistry();
+    private final FrameGrabber frameGrabber;
+    private volatile Screen screen;
+    private volatile Region region;
+    private volatile ScreenSource source = new LiveScreenSource();
+    private volatile SettingsSnapshot settings = SettingsSnapshot.fromSikuli(DEFAULT_TIMEOUT);
+    private volatile boolean captureMatchedImage = true;
+    private volatile CapturePolicy capturePolicy = CapturePolicy.DEFAULT;
+    private volatile Match lastMatch = null;
+    private volatile boolean closed = false;
+
+    public SessionContext(String id, Screen screen, CaptureFolder captureFolder) {
+        this.id = id;
+        this.captureFolder = captureFolder;
+        this.frameGrabber = new FrameGrabber(id);
+        this.screen = screen;
+        this.region = new Region(screen);
+    }
+
+    public static synchronized SessionContext getDefault() {
+        if (DEFAULT == null) {
+            DEFAULT = new SessionContext(DEFAULT_ID, new Screen(), CaptureFolder.getInstance());
+        }
+        return DEFAULT;
+    }
+
+    /**
+     * Return session of the keyword running in this thread, default session outside of keywords.
+     */
+    public static SessionContext current() {
+        SessionContext context = CURRENT.get();
+        return context != null ? context : getDefault();
+    }
+
+    /**
+     * Make context the session of this thread, return the previous one which should be given to leave().
+     */
+    public static SessionContext enter(SessionContext context) {
+        SessionContext previous = CURRENT.get();
+        CURRENT.set(context);
+        return previous;
+    }
+
+    public static void leave(SessionContext previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public CaptureFolder getCaptureFolder() {
+        return captureFolder;
+    }
+
+    public Map<String, Match> getHighlights() {
+        return highlights;
+    }
+
+    public MatchRegistry getMatchRegistry() {
+        return matchRegistry;
+    }
+
+    public Screen getScreen() {
+        return screen;
+    }
+
+    public FrameGrabber getFrameGrabber() {
+        return frameGrabber;
+    }
+
+    /**
+     * Switch to screen, region of interest is reset to the whole screen and the frame grabber follows.
+     */
+    public synchronized void setScreen(Screen screen) {
+        this.screen = screen;
+        this.region = new Region(screen);
+        frameGrabber.setScreen(screen);
+    }
+
+    public Region getRegion() {
+        return region;
+    }
+
+    public void setRegion(Region region) {
+        this.region = region;
+    }
+
+    public ScreenSource getScreenSource() {
+        return source;
+    }
+
+    public void setScreenSource(ScreenSource source) {
+        this.source = source;
+    }
+
+    public SettingsSnapshot getSettings() {
+        return settings;
+    }
+
+    public synchronized void setTimeout(double timeout) {
+        settings = settings.withTimeout(timeout);
+    }
+
+    public synchronized void setMinSimilarity(double minSimilarity) {
+        settings = settings.withMinSimilarity(minSimilarity);
+    }
+
+    public synchronized void setWaitScanRate(float waitScanRate) {
+        settings = settings.withWaitScanRate(waitScanRate);
+    }
+
+    public synchronized void setMoveMouseDelay(float moveMouseDelay) {
+        settings = settings.withMoveMouseDelay(moveMouseDelay);
+    }
+
+    public synchronized void setOcrLanguage(String ocrLanguage) {
+        settings = settings.withOcrLanguage(ocrLanguage);
+    }
+
+    public synchronized void setChangeThreshold(double changeThreshold) {
+        settings = settings.withChangeThreshold(changeThreshold);
+    }
+
+    public synchronized void setPyramidScale(float pyramidScale) {
+        settings = settings.withPyramidScale(pyramidScale);
+    }
+
+    public boolean isCaptureMatchedImage() {
+        return captureMatchedImage;
+    }
+
+    public void setCaptureMatchedImage(boolean captureMatchedImage) {
+        this.captureMatchedImage = captureMatchedImage;
+    }
+
+    public CapturePolicy getCapturePolicy() {
+        return capturePolicy;
+    }
+
+    public void setCapturePolicy(CapturePolicy capturePolicy) {
+        this.capturePolicy = capturePolicy;
+    }
+
+    public Match getLastMatch() {
+        return lastMatch;
+    }
+
+    public void setLastMatch(Match lastMatch) {
+        this.lastMatch = lastMatch;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Close session, highlights and match handles are removed, the frame grabber is stopped
+     * and keywords of the session fail afterwards.
+     */
+    public void close() {
+        closed = true;
+        frameGrabber.stop();
+        for (Match match : highlights.values()) {
+            match.highlight();
+        }
+        highlights.clear();
+        matchRegistry.clear();
+        lastMatch = null;
+    }
+}
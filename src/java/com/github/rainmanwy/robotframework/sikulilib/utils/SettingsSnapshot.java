@@ -0,0 +1,178 @@
+package com.github.rainmanwy.robotframework.sikulilib.utils;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.sikuli.basics.Settings;
+
+/**
+ * Immutable settings a keyword runs with: timeout, min similarity, wait scan rate, move mouse delay, OCR language,
+ * change threshold and pyramid scale.
+ *
+ * Every session keeps its current snapshot, setting keywords replace it with a changed copy.
+ * A keyword takes the snapshot of its session when it starts (see enter()) and reads settings only from it,
+ * so settings changed by a concurrent keyword never show up halfway through.
+ * SikuliX reads move mouse delay from its global settings, it is copied there for each input action only
+ * (see beginInput()), and input actions of concurrent keywords are serialized so they never see the delay of each other.
+ */
+public final class SettingsSnapshot {
+
+    public static final double DEFAULT_CHANGE_THRESHOLD = 0.01;
+    private static final ThreadLocal<SettingsSnapshot> CURRENT = new ThreadLocal<SettingsSnapshot>();
+    private static final ReentrantLock INPUT_LOCK = new ReentrantLock();
+    // global move mouse delay before the input action holding the input lock changed it
+    private static float previousMoveMouseDelay;
+
+    private final double timeout;
+    private final double minSimilarity;
+    private final float waitScanRate;
+    private final float moveMouseDelay;
+    private final String ocrLanguage;
+    private final double changeThreshold;
+    private final float pyramidScale;
+
+    public SettingsSnapshot(double timeout, double minSimilarity, float waitScanRate, float moveMouseDelay,
+                            String ocrLanguage, double changeThreshold, float pyramidScale) {
+        this.timeout = timeout;
+        this.minSimilarity = minSimilarity;
+        this.waitScanRate = waitScanRate;
+        this.moveMouseDelay = moveMouseDelay;
+        this.ocrLanguage = ocrLanguage;
+        this.changeThreshold = changeThreshold;
+        this.pyramidScale = (pyramidScale <= 0 || pyramidScale >= 1) ? 0 : pyramidScale;
+    }
+
+    /**
+     * Return snapshot of the SikuliX global settings with timeout.
+     */
+    public static SettingsSnapshot fromSikuli(double timeout) {
+        return new SettingsSnapshot(timeout, Settings.MinSimilarity, Settings.WaitScanRate, Settings.MoveMouseDelay,
+                Settings.OcrLanguage, DEFAULT_CHANGE_THRESHOLD, 0);
+    }
+
+    /**
+     * Return snapshot of the keyword running in this thread, current settings of its session outside of keywords.
+     */
+    public static SettingsSnapshot current() {
+        SettingsSnapshot snapshot = CURRENT.get();
+        return snapshot != null ? snapshot : SessionContext.current().getSettings();
+    }
+
+    /**
+     * Make snapshot the settings of this thread, return the previous one which should be given to leave().
+     */
+    public static SettingsSnapshot enter(SettingsSnapshot snapshot) {
+        SettingsSnapshot previous = CURRENT.get();
+        CURRENT.set(snapshot);
+        return previous;
+    }
+
+    public static void leave(SettingsSnapshot previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * Take the input lock and copy settings used by SikuliX mouse actions to its global settings.
+     * Call it right before a single SikuliX input action, and endInput() in a finally block right after it,
+     * so input of other keywords waits only for the action itself, never for searches or waits of this keyword.
+     */
+    public void beginInput() {
+        INPUT_LOCK.lock();
+        if (INPUT_LOCK.getHoldCount() == 1) {
+            previousMoveMouseDelay = Settings.MoveMouseDelay;
+        }
+        Settings.MoveMouseDelay = moveMouseDelay;
+    }
+
+    /**
+     * Restore the global settings changed by beginInput() and release the input lock.
+     */
+    public static void endInput() {
+        if (INPUT_LOCK.getHoldCount() == 1) {
+            Settings.MoveMouseDelay = previousMoveMouseDelay;
+        }
+        INPUT_LOCK.unlock();
+    }
+
+    public double getTimeout() {
+        return timeout;
+    }
+
+    public double getMinSimilarity() {
+        return minSimilarity;
+    }
+
+    public float getWaitScanRate() {
+        return waitScanRate;
+    }
+
+    public float getMoveMouseDelay() {
+        return moveMouseDelay;
+    }
+
+    public String getOcrLanguage() {
+        return ocrLanguage;
+    }
+
+    /**
+     * Return fraction of pixels which must differ before a region counts as changed.
+     */
+    public double getChangeThreshold() {
+        return changeThreshold;
+    }
+
+    /**
+     * Return downscale factor of coarse to fine matching, 0 if it is off (see FrameMatcher.find()).
+     */
+    public float getPyramidScale() {
+        return pyramidScale;
+    }
+
+    public SettingsSnapshot withTimeout(double timeout) {
+        return new SettingsSnapshot(timeout, minSimilarity, waitScanRate, moveMouseDelay, ocrLanguage, changeThreshold,
+                pyramidScale);
+    }
+
+    public SettingsSnapshot withMinSimilarity(double minSimilarity) {
+        return new SettingsSnapshot(timeout, minSimilarity, waitScanRate, moveMouseDelay, ocrLanguage, changeThreshold,
+                pyramidScale);
+    }
+
+    public SettingsSnapshot withWaitScanRate(float waitScanRate) {
+        return new SettingsSnapshot(timeout, minSimilarity, waitScanRate, moveMouseDelay, ocrLanguage, changeThreshold,
+                pyramidScale);
+    }
+
+    public SettingsSnapshot withMoveMouseDelay(float moveMouseDelay) {
+        return new SettingsSnapshot(timeout, minSimilarity, waitScanRate, moveMouseDelay, ocrLanguage, changeThreshold,
+                pyramidScale);
+    }
+
+    public SettingsSnapshot withOcrLanguage(String ocrLanguage) {
+        return new SettingsSnapshot(timeout, minSimilarity, waitScanRate, moveMouseDelay, ocrLanguage, changeThreshold,
+                pyramidScale);
+    }
+
+    public SettingsSnapshot withChangeThreshold(double changeThreshold) {
+        return new SettingsSnapshot(timeout, minSimilarity, waitScanRate, moveMouseDelay, ocrLanguage, changeThreshold,
+                pyramidScale);
+    }
+
+    /**
+     * Return copy with pyramid scale, 0 or 1 switches coarse to fine matching off.
+     */
+    public SettingsSnapshot withPyramidScale(float pyramidScale) {
+        return new SettingsSnapshot(timeout, minSimilarity, waitScanRate, moveMouseDelay, ocrLanguage, changeThreshold,
+                pyramidScale);
+    }
+
+    @Override
+    public String toString() {
+        return "timeout=" + timeout + " minSimilarity=" + minSimilarity + " waitScanRate=" + waitScanRate
+                + " moveMouseDelay=" + moveMouseDelay + " ocrLanguage=" + ocrLanguage
+                + " changeThreshold=" + changeThreshold + " pyramidScale=" + pyramidScale;
+    }
+}
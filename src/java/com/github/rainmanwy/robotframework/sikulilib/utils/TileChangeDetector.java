@@ -0,0 +1,118 @@
+package com.github.rainmanwy.robotframework.sikulilib.utils;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Detect which part of a frame changed since the previous frame.
+ *
+ * Frames are split into square tiles, and a hash is kept for every tile.
+ * Hashing a frame is a single pass over the pixels, which is much cheaper than template matching,
+ * so waits can skip matching when nothing changed, or only match around the changed areas.
+ */
+public class TileChangeDetector {
+
+    public static final int DEFAULT_TILE_SIZE = 32;
+
+    private final int tileSize;
+    private int width = -1;
+    private int height = -1;
+    private int columns;
+    private long[] hashes = null;
+
+    public TileChangeDetector() {
+        this(DEFAULT_TILE_SIZE);
+    }
+
+    public TileChangeDetector(int tileSize) {
+        this.tileSize = tileSize;
+    }
+
+    /**
+     * Hash frame and compare it with the previous one.
+     * Return the changed areas (frame coordinates), an empty list if nothing changed,
+     * or null if there is no comparable previous frame.
+     * Every area is the bounding box of changed tiles which touch each other (diagonal neighbours too),
+     * so separate changes, like a clock and a dialog, stay separate areas.
+     */
+    public List<Rectangle> update(BufferedImage frame) {
+        long[] previous = hashes;
+        boolean comparable = previous != null && frame.getWidth() == width && frame.getHeight() == height;
+        width = frame.getWidth();
+        height = frame.getHeight();
+        columns = (width + tileSize - 1) / tileSize;
+        hashes = hash(frame);
+        if (!comparable) {
+            return null;
+        }
+        int rows = hashes.length / Math.max(1, columns);
+        Rectangle bounds = new Rectangle(0, 0, width, height);
+        List<Rectangle> dirty = new ArrayList<Rectangle>();
+        boolean[] visited = new boolean[hashes.length];
+        int[] stack = new int[hashes.length];
+        for (int i = 0; i < hashes.length; i++) {
+            if (visited[i] || hashes[i] == previous[i]) {
+                continue;
+            }
+            int minColumn = Integer.MAX_VALUE, minRow = Integer.MAX_VALUE, maxColumn = -1, maxRow = -1;
+            int size = 0;
+            stack[size++] = i;
+            visited[i] = true;
+            while (size > 0) {
+                int tile = stack[--size];
+                int column = tile % columns;
+                int row = tile / columns;
+                minColumn = Math.min(minColumn, column);
+                minRow = Math.min(minRow, row);
+                maxColumn = Math.max(maxColumn, column);
+                maxRow = Math.max(maxRow, row);
+                for (int y = Math.max(0, row - 1); y <= Math.min(rows - 1, row + 1); y++) {
+                    for (int x = Math.max(0, column - 1); x <= Math.min(columns - 1, column + 1); x++) {
+                        int next = y * columns + x;
+                        if (!visited[next] && hashes[next] != previous[next]) {
+                            visited[next] = true;
+                            stack[size++] = next;
+                        }
+                    }
+                }
+            }
+            Rectangle area = new Rectangle(minColumn * tileSize, minRow * tileSize,
+                    (maxColumn - minColumn + 1) * tileSize, (maxRow - minRow + 1) * tileSize);
+            dirty.add(area.intersection(bounds));
+        }
+        return dirty;
+    }
+
+    /**
+     * Return true if any of the changed areas intersects area.
+     */
+    public static boolean intersects(List<Rectangle> dirty, Rectangle area) {
+        for (Rectangle rectangle : dirty) {
+            if (rectangle.intersects(area)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void reset() {
+        hashes = null;
+    }
+
+    private long[] hash(BufferedImage frame) {
+        int rows = (height + tileSize - 1) / tileSize;
+        long[] result = new long[columns * rows];
+        int[] line = new int[width];
+        for (int y = 0; y < height; y++) {
+            frame.getRGB(0, y, width, 1, line, 0, width);
+            int offset = (y / tileSize) * columns;
+            for (int x = 0; x < width; x++) {
+                int tile = offset + x / tileSize;
+                result[tile] = result[tile] * 31 + line[x];
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,104 @@
+package com.github.rainmanwy.robotframework.sikulilib.utils;
+
+/**
+ * Polling schedule of one wait.
+ *
+ * The first polls follow each other quickly, so a wait for something which is already there, or appears soon,
+ * adds little latency. While the screen does not change the interval backs off up to the scan rate interval
+ * (1 / WaitScanRate), any change brings it back to the fast interval. The interval never drops below the time
+ * the previous poll took, so matching uses at most about half of a core.
+ *
+ * Sleeps are cut at the deadline and the last poll is done at the deadline, so a wait neither ends early
+ * nor overruns its timeout by a polling interval.
+ *
+ * Usage:
+ * <pre>
+ * WaitScheduler scheduler = new WaitScheduler("wait", timeout, scanRate);
+ * do {
+ *     scheduler.beginPoll();
+ *     ... capture and match, call matched() for every match attempt ...
+ *     scheduler.endPoll(changed);
+ * } while (!found &amp;&amp; scheduler.sleep());
+ * scheduler.finish(found);
+ * </pre>
+ */
+public class WaitScheduler {
+
+    public static final long FAST_INTERVAL = 20;
+
+    private final String name;
+    private final long deadline;
+    private final long slowInterval;
+    private long interval = FAST_INTERVAL;
+    private long pollBegin = 0;
+    private long pollTime = 0;
+    private int polls = 0;
+    private int matches = 0;
+
+    /**
+     * Schedule a wait of timeout seconds, scanRate is the lowest polling rate per second.
+     */
+    public WaitScheduler(String name, double timeout, double scanRate) {
+        this.name = name;
+        this.deadline = System.currentTimeMillis() + Math.max(0, (long) (timeout * 1000));
+        this.slowInterval = Math.max(FAST_INTERVAL, scanRate > 0 ? (long) (1000 / scanRate) : 1000);
+    }
+
+    public void beginPoll() {
+        pollBegin = System.currentTimeMillis();
+        polls++;
+    }
+
+    /**
+     * Count a match attempt of the current poll.
+     */
+    public void matched() {
+        matches++;
+    }
+
+    /**
+     * End poll, changed tells whether the screen changed since the previous poll.
+     */
+    public void endPoll(boolean changed) {
+        pollTime = System.currentTimeMillis() - pollBegin;
+        if (changed) {
+            interval = FAST_INTERVAL;
+        } else {
+            interval = Math.min(interval * 2, slowInterval);
+        }
+    }
+
+    /**
+     * Sleep until the next poll, return false without sleeping if the deadline passed.
+     */
+    public boolean sleep() throws InterruptedException {
+        long sleep = nextSleep();
+        if (sleep <= 0) {
+            return false;
+        }
+        Thread.sleep(sleep);
+        return true;
+    }
+
+    /**
+     * Return milliseconds until the next poll, 0 if the deadline passed.
+     */
+    long nextSleep() {
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+            return 0;
+        }
+        return Math.min(Math.max(interval, pollTime), remaining);
+    }
+
+    public boolean isExpired() {
+        return System.currentTimeMillis() >= deadline;
+    }
+
+    /**
+     * Record polls and matches of the wait, see PerformanceStatistics.
+     */
+    public void finish(boolean found) {
+        PerformanceStatistics.getInstance().recordWait(name, polls, matches, found);
+    }
+}
@@ -0,0 +1,141 @@
+"""
+Binary transport of sikuli java process, see BinaryTransport.java
+
+Every frame is a 4 byte big endian length and a value, values are tagged:
+N null, T true, F false, I 8 byte integer, D 8 byte double, S 4 byte length and UTF-8,
+L 4 byte count and values, M 4 byte count and key value pairs.
+"""
+
+import socket
+import struct
+import sys
+
+try:
+    unicode
+except NameError:
+    unicode = str
+try:
+    integer_types = (int, long)
+except NameError:
+    integer_types = (int,)
+
+
+class BinaryConnectionError(RuntimeError):
+    pass
+
+
+class BinaryKeywordError(RuntimeError):
+
+    def __init__(self, error, traceback=None):
+        RuntimeError.__init__(self, error)
+        self.traceback = traceback
+
+
+class BinaryClient(object):
+
+    def __init__(self, port, path='/', timeout=None):
+        self.path = path
+        self.sock = socket.create_connection(('127.0.0.1', int(port)), timeout)
+        self.sock.settimeout(None)
+        self.sock.setsockopt(socket.IPPROTO_TCP, socket.TCP_NODELAY, 1)
+        self.stream = self.sock.makefile('rb')
+
+    def run_keyword(self, name, args, kwargs=None):
+        """
+        Run keyword in java process, output of keyword is written to stdout, so robot logs it
+        """
+        payload = encode([self.path, name, list(args), kwargs or {}])
+        self.sock.sendall(struct.pack('>i', len(payload)) + payload)
+        header = self._read(4)
+        result = decode(_Reader(self._read(struct.unpack('>i', header)[0])))
+        output = result.get('output')
+        if output:
+            sys.stdout.write(output)
+        if result.get('status') != 'PASS':
+            raise BinaryKeywordError(result.get('error', ''), result.get('traceback'))
+        return result.get('return')
+
+    def close(self):
+        try:
+            self.stream.close()
+        finally:
+            self.sock.close()
+
+    def _read(self, size):
+        data = self.stream.read(size)
+        if data is None or len(data) != size:
+            raise BinaryConnectionError('Sikuli java process closed binary transport')
+        return data
+
+
+def encode(value):
+    parts = []
+    _encode(value, parts)
+    return b''.join(parts)
+
+
+def _encode(value, parts):
+    if value is None:
+        parts.append(b'N')
+    elif value is True:
+        parts.append(b'T')
+    elif value is False:
+        parts.append(b'F')
+    elif isinstance(value, integer_types) and -2 ** 63 <= value < 2 ** 63:
+        parts.append(b'I' + struct.pack('>q', value))
+    elif isinstance(value, float):
+        parts.append(b'D' + struct.pack('>d', value))
+    elif isinstance(value, dict):
+        parts.append(b'M' + struct.pack('>i', len(value)))
+        for key, item in value.items():
+            _encode(unicode(key), parts)
+            _encode(item, parts)
+    elif isinstance(value, (list, tuple)):
+        parts.append(b'L' + struct.pack('>i', len(value)))
+        for item in value:
+            _encode(item, parts)
+    else:
+        if isinstance(value, bytes):
+            value = value.decode('utf-8', 'replace')
+        text = unicode(value).encode('utf-8')
+        parts.append(b'S' + struct.pack('>i', len(text)) + text)
+
+
+class _Reader(object):
+
+    def __init__(self, data):
+        self.data = data
+        self.offset = 0
+
+    def read(self, size):
+        data = self.data[self.offset:self.offset + size]
+        self.offset += size
+        return data
+
+
+def decode(reader):
+    tag = reader.read(1)
+    if tag == b'N':
+        return None
+    if tag == b'T':
+        return True
+    if tag == b'F':
+        return False
+    if tag == b'I':
+        return struct.unpack('>q', reader.read(8))[0]
+    if tag == b'D':
+        return struct.unpack('>d', reader.read(8))[0]
+    if tag == b'S':
+        size = struct.unpack('>i', reader.read(4))[0]
+        return reader.read(size).decode('utf-8')
+    if tag == b'L':
+        count = struct.unpack('>i', reader.read(4))[0]
+        return [decode(reader) for _ in range(count)]
+    if tag == b'M':
+        count = struct.unpack('>i', reader.read(4))[0]
+        result = {}
+        for _ in range(count):
+            key = decode(reader)
+            result[key] = decode(reader)
+        return result
+    raise RuntimeError('Unknown value tag %r' % tag)
@@ -12,11 +12,8 @@ import glob
 import time
 import threading
 import codecs
+import atexit
 
-try:
-    from urllib import urlopen
-except ImportError:
-    from urllib.request import urlopen
 try:
     from xmlrpclib import ProtocolError
 except ImportError:
@@ -25,6 +22,7 @@ from robot.libraries.Process import Process
 from robot.libraries.Remote import Remote
 from robot.libraries.BuiltIn import BuiltIn
 from .version import VERSION
+from .binary import BinaryClient, BinaryConnectionError
 try:
     from .keywords import KEYWORDS
 except ImportError:
@@ -34,8 +32,9 @@ except ImportError:
 class SikuliLibrary(object):
     ROBOT_LIBRARY_SCOPE = 'GLOBAL'
     ROBOT_LIBRARY_VERSION = VERSION
+    READY_MESSAGE = 'SIKULI_LIBRARY_READY'
 
-    def __init__(self, port=0, timeout=3.0, mode='OLD'):
+    def __init__(self, port=0, timeout=3.0, mode='OLD', transport='XMLRPC'):
         """
         @port: sikuli java process socket port
         @timeout: Timeout of waiting java process started
@@ -44,11 +43,18 @@ class SikuliLibrary(object):
                if set as 'CREATE', it is only for mvn package usage, will create keywords.py file
                if set as 'OLD'(default), sikuli java process will be started when library is inited
                if set as 'NEW', user should use 'start_sikuli_process' to start java process
+               if set as 'SESSION', connect to sikuli java process running on port and open an own session,
+               so several test runners could share one java process without sharing screen state
+        @transport: if set as 'BINARY', keywords are run over a persistent socket with compact binary frames,
+               if set as 'XMLRPC'(default) or binary transport is not available, keywords are run over XML-RPC
         """
         self.logger = self._init_logger()
         self.timeout = float(timeout)
         self.port = None
         self.remote = None
+        self.session = None
+        self.binary = None
+        self.transport = transport.upper().strip()
         self.mode = mode.upper().strip()
         if mode == 'OLD':
             self.start_sikuli_process(port)
@@ -57,6 +63,8 @@ class SikuliLibrary(object):
             self._stop_thread(4)
         elif mode.upper().strip() == 'PYTHON':
             self.connect_sikuli_process(port)
+        elif mode.upper().strip() == 'SESSION':
+            self.connect_sikuli_session(port)
         elif mode.upper().strip() == 'CREATE':
             self._create_keywords_file()
         elif mode.upper().strip() != 'NEW':
@@ -91,10 +99,42 @@ class SikuliLibrary(object):
         if not started:
             raise RuntimeError('Start sikuli java process failed!')
         self.remote = self._connect_remote_library()
+        self._connect_binary_transport()
 
     def connect_sikuli_process(self, port):
         self.port = port
         self.remote = self._connect_remote_library()
+        self._connect_binary_transport()
+
+    def connect_sikuli_session(self, port):
+        """
+        Open a session in sikuli java process running on port, keywords are run in this session
+        """
+        self.port = port
+        remote = self._connect_remote_library()
+        self.session = remote.run_keyword('openSession', [self._get_output_folder()], None)
+        self.logger.info('Opened sikuli session %s' % self.session)
+        self.remote = Remote('http://127.0.0.1:%s%s' % (str(self.port), self.session))
+        atexit.register(self._close_sikuli_session)
+        self._connect_binary_transport()
+
+    def _connect_binary_transport(self):
+        if self.transport != 'BINARY':
+            return
+        try:
+            binaryPort = self.remote.run_keyword('startBinaryTransport', [], None)
+            self.binary = BinaryClient(binaryPort, self.session or '/', self.timeout)
+        except Exception as err:
+            self.logger.warn('Binary transport is not available, use XML-RPC: %s' % err)
+            self.binary = None
+            return
+        self.logger.info('Run keywords over binary transport on port %s' % str(binaryPort))
+
+    def _close_sikuli_session(self):
+        try:
+            self.remote.run_keyword('closeSession', [self.session], None)
+        except Exception as err:
+            self.logger.warn('Close sikuli session %s failed: %s' % (self.session, err))
 
     def _create_keywords_file(self):
         keywordDict = {}
@@ -157,32 +197,47 @@ class SikuliLibrary(object):
             raise Exception('Sikuli jar package should be exist in lib folder')
         sikuliJar = jarList[0]
         java = 'java'
-        arguments = ['-jar', sikuliJar, str(self.port), self._get_output_folder()]
-        self.process = Process()
-        if os.getenv("DISABLE_SIKULI_LOG"):
-            self.process.start_process(java, *arguments, shell=True)
-        else:
-            self.process.start_process(java, *arguments, shell=True, stdout=self._output_file(),
-                                       stderr=self._err_file())
-        self.logger.info('Start sikuli java process on port %s' % str(self.port))
-        self._wait_process_started()
+        readySocket = self._open_ready_socket()
+        try:
+            readyPort = readySocket.getsockname()[1]
+            arguments = ['-jar', sikuliJar, str(self.port), self._get_output_folder(), str(readyPort)]
+            self.process = Process()
+            if os.getenv("DISABLE_SIKULI_LOG"):
+                self.process.start_process(java, *arguments, shell=True)
+            else:
+                self.process.start_process(java, *arguments, shell=True, stdout=self._output_file(),
+                                           stderr=self._err_file())
+            self.logger.info('Start sikuli java process on port %s' % str(self.port))
+            self._wait_process_started(readySocket)
+        finally:
+            readySocket.close()
         self.logger.info('Sikuli java process is started')
 
-    def _wait_process_started(self):
-        url = "http://127.0.0.1:%s/" % str(self.port)
-        currentTime = startedTime = time.time()
-        started = False
-        while (currentTime - startedTime) < self.timeout:
-            try:
-                urlopen(url).read()
-            except Exception:
-                currentTime = time.time()
-                time.sleep(1.0)
-                continue
-            started = True
-            break
-        if not started:
+    def _open_ready_socket(self):
+        sock = socket.socket(socket.AF_INET, socket.SOCK_STREAM)
+        sock.bind(('127.0.0.1', 0))
+        sock.listen(1)
+        return sock
+
+    def _wait_process_started(self, readySocket):
+        """
+        Java process connects to ready socket and sends a ready line, when remote server is listening
+        """
+        readySocket.settimeout(self.timeout)
+        try:
+            conn, addr = readySocket.accept()
+        except socket.timeout:
             raise RuntimeError('Start sikuli java process failed!')
+        try:
+            conn.settimeout(self.timeout)
+            line = conn.makefile('rb').readline().decode('utf-8').strip()
+        except Exception as err:
+            raise RuntimeError('Start sikuli java process failed! %s' % err)
+        finally:
+            conn.close()
+        if not line.startswith(self.READY_MESSAGE):
+            raise RuntimeError('Start sikuli java process failed! Unexpected ready message: %s' % line)
+        self.logger.debug('Sikuli java process is ready: %s' % line)
 
     def _output_file(self):
         outputDir = self._get_output_folder()
@@ -217,7 +272,7 @@ class SikuliLibrary(object):
             except Exception as err:
                 self.logger.warn("Test get_keyword_names failed! %s" % err)
                 currentTime = time.time()
-                time.sleep(1.0)
+                time.sleep(0.1)
                 continue
             started = True
             break
@@ -251,8 +306,25 @@ class SikuliLibrary(object):
     def run_keyword(self, name, arguments=[]):
         if name == 'start_sikuli_process':
             return self.start_sikuli_process(*arguments)
+        if name == 'stop_remote_server':
+            self._flush_captures()
+        if self.binary and name != 'stop_remote_server':
+            try:
+                return self.binary.run_keyword(name, arguments)
+            except (socket.error, BinaryConnectionError) as err:
+                # the keyword may have run already, so it is not sent again, only later keywords use XML-RPC
+                self.logger.warn('Binary transport failed, later keywords use XML-RPC: %s' % err)
+                self.binary = None
+                raise
         return self.remote.run_keyword(name, arguments, None)
 
+    def _flush_captures(self):
+        # captures are written in background, the server does not wait for them when it is stopped
+        try:
+            self.remote.run_keyword('flush_captures', [], None)
+        except Exception as err:
+            self.logger.warn('Flush captures failed: %s' % err)
+
     def _stop_thread(self, timeout):
         def stop():
             time.sleep(float(timeout))
@@ -0,0 +1,84 @@
+package com.github.rainmanwy.robotframework.sikulilib.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class BinaryTransportTest {
+
+    private static Object roundTrip(Object value) throws IOException {
+        return decode(BinaryTransport.encode(value));
+    }
+
+    private static Object decode(byte[] bytes) throws IOException {
+        return BinaryTransport.decode(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    @Test
+    public void scalarsRoundTrip() throws Exception {
+        assertNull(roundTrip(null));
+        assertEquals(Boolean.TRUE, roundTrip(true));
+        assertEquals(Boolean.FALSE, roundTrip(false));
+        assertEquals(42, roundTrip(42));
+        assertEquals(-7, roundTrip((short) -7));
+        assertEquals(1L << 40, roundTrip(1L << 40));
+        assertEquals(0.25, roundTrip(0.25));
+        assertEquals(0.5, roundTrip(0.5f));
+        assertEquals("ok.png \u2713", roundTrip("ok.png \u2713"));
+    }
+
+    @Test
+    public void smallLongIsDecodedAsInteger() throws Exception {
+        assertEquals(Integer.valueOf(3), roundTrip(3L));
+    }
+
+    @Test
+    public void containersRoundTrip() throws Exception {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("status", "PASS");
+        map.put("return", Arrays.asList(1, "two", null, 3.5));
+        map.put("nested", new LinkedHashMap<String, Object>());
+        List<Object> request = new ArrayList<Object>(Arrays.asList("/", "click", new ArrayList<Object>(), map));
+        assertEquals(request, roundTrip(request));
+    }
+
+    @Test
+    public void arraysAndKeysAreEncodedAsListsAndStrings() throws Exception {
+        assertEquals(Arrays.asList(1, 2, 3), roundTrip(new int[] {1, 2, 3}));
+        Map<Object, Object> map = new LinkedHashMap<Object, Object>();
+        map.put(1, new String[] {"a"});
+        Map<String, Object> expected = new LinkedHashMap<String, Object>();
+        expected.put("1", Arrays.asList("a"));
+        assertEquals(expected, roundTrip(map));
+    }
+
+    @Test
+    public void otherValuesAreEncodedAsText() throws Exception {
+        assertEquals("java.awt.Point[x=1,y=2]", roundTrip(new java.awt.Point(1, 2)));
+    }
+
+    @Test(expected = IOException.class)
+    public void unknownTagFails() throws Exception {
+        decode(new byte[] {'X'});
+    }
+
+    @Test(expected = IOException.class)
+    public void negativeLengthFails() throws Exception {
+        decode(new byte[] {'S', (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff});
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedFrameFails() throws Exception {
+        decode(new byte[] {'L', 0, 0, 0, 2, 'T'});
+    }
+}
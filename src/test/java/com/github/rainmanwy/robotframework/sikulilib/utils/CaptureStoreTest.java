@@ -0,0 +1,162 @@
+package com.github.rainmanwy.robotframework.sikulilib.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+
+import javax.imageio.ImageIO;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CaptureStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private static BufferedImage image(int rgb) {
+        BufferedImage image = new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(3, 4, rgb);
+        return image;
+    }
+
+    @Before
+    public void connectStore() {
+        CaptureWriter.getInstance().setListener(CaptureStore.getInstance());
+    }
+
+    @After
+    public void restoreWriter() throws Exception {
+        release.countDown();
+        CaptureWriter writer = CaptureWriter.getInstance();
+        writer.flush();
+        writer.setListener(CaptureStore.getInstance());
+        writer.setQueue(16, CaptureWriter.Policy.BLOCK);
+        CaptureStore.getInstance().setBudget(0, 0);
+    }
+
+    /**
+     * Keep the writer thread busy after its first file, so the queue fills up.
+     */
+    private void blockWriter(final CaptureStore store, final CountDownLatch busy) {
+        CaptureWriter.getInstance().setListener(new CaptureWriter.Listener() {
+            @Override
+            public void written(File file) {
+                store.written(file);
+                busy.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+    }
+
+    @Test
+    public void identicalCaptureIsStoredOnce() throws Exception {
+        CaptureStore store = CaptureStore.getInstance();
+        String path = folder.getRoot().getPath();
+        File first = store.save(path, null, image(0xff0000), CapturePolicy.DEFAULT);
+        File second = store.save(path, null, image(0xff0000), CapturePolicy.DEFAULT);
+        File other = store.save(path, null, image(0x00ff00), CapturePolicy.DEFAULT);
+        CaptureWriter.getInstance().flush();
+        assertEquals(first, second);
+        assertNotEquals(first, other);
+        assertTrue(first.exists());
+        assertTrue(other.exists());
+    }
+
+    @Test
+    public void captureWithSameNameButOtherPixelsIsNotDeduplicated() throws Exception {
+        BufferedImage capture = image(0x0000ff);
+        String name = "sikuliximage-" + ImageHash.toString(capture) + ".png";
+        // a file of that name from an earlier run, holding other pixels
+        ImageIO.write(image(0xffffff), "png", new File(folder.getRoot(), name));
+        File file = CaptureStore.getInstance().save(folder.getRoot().getPath(), null, capture, CapturePolicy.DEFAULT);
+        CaptureWriter.getInstance().flush();
+        assertEquals(name.replace(".png", "-1.png"), file.getName());
+        assertEquals(0x0000ff, ImageIO.read(file).getRGB(3, 4) & 0xffffff);
+    }
+
+    @Test(timeout = 10000)
+    public void deduplicatedCaptureIsNotDropped() throws Exception {
+        final CaptureStore store = CaptureStore.getInstance();
+        final CountDownLatch busy = new CountDownLatch(1);
+        CaptureWriter writer = CaptureWriter.getInstance();
+        blockWriter(store, busy);
+        writer.setQueue(2, CaptureWriter.Policy.DROP_OLDEST);
+        String path = folder.getRoot().getPath();
+        store.save(path, "busy", image(0x010101), CapturePolicy.DEFAULT);
+        busy.await();
+        File shared = store.save(path, null, image(0x020202), CapturePolicy.DEFAULT);
+        assertEquals(shared, store.save(path, null, image(0x020202), CapturePolicy.DEFAULT));
+        File next = store.save(path, null, image(0x030303), CapturePolicy.DEFAULT);
+        store.save(path, null, image(0x040404), CapturePolicy.DEFAULT);
+        assertTrue(writer.isPending(shared));
+        assertFalse(writer.isPending(next));
+        release.countDown();
+        writer.flush();
+        assertTrue(shared.exists());
+    }
+
+    @Test
+    public void earlierFileIsNeitherCountedNorEvicted() throws Exception {
+        CaptureStore store = CaptureStore.getInstance();
+        CaptureWriter writer = CaptureWriter.getInstance();
+        String path = folder.getRoot().getPath();
+        BufferedImage earlier = image(0x0a0a0a);
+        File file = new File(folder.getRoot(), "sikuliximage-" + ImageHash.toString(earlier) + ".png").getAbsoluteFile();
+        ImageIO.write(earlier, "png", file);
+        store.setBudget(0, 1);
+        assertEquals(file, store.save(path, null, earlier, CapturePolicy.DEFAULT));
+        File first = store.save(path, null, image(0x0b0b0b), CapturePolicy.DEFAULT);
+        writer.flush();
+        File second = store.save(path, null, image(0x0c0c0c), CapturePolicy.DEFAULT);
+        writer.flush();
+        assertTrue(file.exists());
+        assertFalse(first.exists());
+        assertTrue(second.exists());
+        assertEquals(1, store.getStatistics().get("files"));
+    }
+
+    @Test(timeout = 10000)
+    public void blockedWriteDoesNotStopDeduplication() throws Exception {
+        final CaptureStore store = CaptureStore.getInstance();
+        final String path = folder.getRoot().getPath();
+        CountDownLatch busy = new CountDownLatch(1);
+        blockWriter(store, busy);
+        CaptureWriter.getInstance().setQueue(1, CaptureWriter.Policy.BLOCK);
+        store.save(path, "busy", image(0x111111), CapturePolicy.DEFAULT);
+        busy.await();
+        File queued = store.save(path, null, image(0x222222), CapturePolicy.DEFAULT);
+        Thread blocked = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    store.save(path, null, image(0x333333), CapturePolicy.DEFAULT);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        blocked.start();
+        while (blocked.getState() != Thread.State.WAITING) {
+            Thread.sleep(10);
+        }
+        // the queue is full and another save waits for it, an identical capture is still found right away
+        assertEquals(queued, store.save(path, null, image(0x222222), CapturePolicy.DEFAULT));
+        release.countDown();
+        blocked.join();
+    }
+}
@@ -0,0 +1,103 @@
+package com.github.rainmanwy.robotframework.sikulilib.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+
+import javax.imageio.ImageIO;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CaptureWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final CountDownLatch busy = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    /**
+     * Keep the writer thread busy after its first file, so the queue fills up.
+     */
+    private void blockWriter(CaptureWriter writer, int capacity, CaptureWriter.Policy policy) throws Exception {
+        writer.setListener(new CaptureWriter.Listener() {
+            @Override
+            public void written(File file) {
+                busy.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        writer.setQueue(capacity, policy);
+        writer.write(new File(folder.getRoot(), "first.png"), new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB));
+        busy.await();
+    }
+
+    @After
+    public void restoreWriter() throws Exception {
+        release.countDown();
+        CaptureWriter writer = CaptureWriter.getInstance();
+        writer.flush();
+        writer.setListener(null);
+        writer.setQueue(16, CaptureWriter.Policy.BLOCK);
+    }
+
+    @Test(timeout = 10000)
+    public void thumbnailPolicyDoesNotBlockOnFullQueue() throws Exception {
+        CaptureWriter writer = CaptureWriter.getInstance();
+        blockWriter(writer, 1, CaptureWriter.Policy.THUMBNAIL);
+        File second = new File(folder.getRoot(), "second.png");
+        File third = new File(folder.getRoot(), "third.png");
+        writer.write(second, new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB));
+        writer.write(third, new BufferedImage(1000, 500, BufferedImage.TYPE_INT_RGB));
+        assertTrue(writer.isPending(second));
+        assertTrue(writer.isPending(third));
+        release.countDown();
+        writer.flush();
+        BufferedImage thumbnail = ImageIO.read(third);
+        assertEquals(320, thumbnail.getWidth());
+        assertEquals(160, thumbnail.getHeight());
+    }
+
+    @Test(timeout = 10000)
+    public void thumbnailOverflowDropsOldestThumbnail() throws Exception {
+        CaptureWriter writer = CaptureWriter.getInstance();
+        blockWriter(writer, 1, CaptureWriter.Policy.THUMBNAIL);
+        long dropped = writer.getDropped();
+        File second = new File(folder.getRoot(), "second.png");
+        writer.write(second, new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB));
+        File[] thumbnails = new File[4];
+        for (int i = 0; i < thumbnails.length; i++) {
+            thumbnails[i] = new File(folder.getRoot(), "thumbnail" + i + ".png");
+            writer.write(thumbnails[i], new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB));
+        }
+        // at most four times capacity is queued, the full size capture is kept
+        assertEquals(dropped + 1, writer.getDropped());
+        assertTrue(writer.isPending(second));
+        assertTrue(!writer.isPending(thumbnails[0]));
+        assertTrue(writer.isPending(thumbnails[3]));
+    }
+
+    @Test(timeout = 10000)
+    public void dropOldestPolicyDropsPendingCapture() throws Exception {
+        CaptureWriter writer = CaptureWriter.getInstance();
+        blockWriter(writer, 1, CaptureWriter.Policy.DROP_OLDEST);
+        long dropped = writer.getDropped();
+        File second = new File(folder.getRoot(), "second.png");
+        File third = new File(folder.getRoot(), "third.png");
+        writer.write(second, new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB));
+        writer.write(third, new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB));
+        assertEquals(dropped + 1, writer.getDropped());
+        assertTrue(!writer.isPending(second));
+        assertTrue(writer.isPending(third));
+    }
+}
@@ -0,0 +1,63 @@
+package com.github.rainmanwy.robotframework.sikulilib.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.sikuli.script.Match;
+import org.sikuli.script.ScreenImage;
+
+public class FrameMatcherTest {
+
+    private static Match match(int x, int y, double score) {
+        return new Match(x, y, 20, 10, score, null);
+    }
+
+    @Test
+    public void overlappingWorseMatchIsSuppressed() {
+        Match best = match(100, 100, 0.99);
+        Match shifted = match(102, 101, 0.95);
+        List<Match> kept = FrameMatcher.suppressOverlaps(new ArrayList<Match>(Arrays.asList(shifted, best)));
+        assertEquals(1, kept.size());
+        assertSame(best, kept.get(0));
+    }
+
+    @Test
+    public void separateMatchesAreKeptBestFirst() {
+        Match left = match(0, 0, 0.91);
+        Match right = match(40, 0, 0.97);
+        Match below = match(0, 30, 0.93);
+        List<Match> kept = FrameMatcher.suppressOverlaps(new ArrayList<Match>(Arrays.asList(left, right, below)));
+        assertEquals(Arrays.asList(right, below, left), kept);
+    }
+
+    @Test
+    public void matchCoveredAtMostHalfIsKept() {
+        Match best = match(0, 0, 0.99);
+        // overlaps best in 10 x 10 pixels, which is half of its 20 x 10 pixels
+        Match half = match(10, 0, 0.95);
+        // overlaps best in 11 x 10 pixels
+        Match more = match(9, 0, 0.94);
+        List<Match> kept = FrameMatcher.suppressOverlaps(new ArrayList<Match>(Arrays.asList(best, half, more)));
+        assertEquals(Arrays.asList(best, half), kept);
+    }
+
+    @Test
+    public void cropCopiesWindowInScreenCoordinates() {
+        BufferedImage image = new BufferedImage(50, 40, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(15, 12, 0x123456);
+        ScreenImage frame = new ScreenImage(new Rectangle(100, 200, 50, 40), image);
+        ScreenImage window = FrameMatcher.crop(frame, new Rectangle(110, 210, 10, 5));
+        assertEquals(new Rectangle(110, 210, 10, 5), window.getROI());
+        assertEquals(10, window.getImage().getWidth());
+        assertEquals(0x123456, window.getImage().getRGB(5, 2) & 0xffffff);
+        assertTrue(ImageHash.plainPixels(window.getImage()) != null);
+    }
+}
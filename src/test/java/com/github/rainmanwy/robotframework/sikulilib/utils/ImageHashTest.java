@@ -0,0 +1,73 @@
+package com.github.rainmanwy.robotframework.sikulilib.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class ImageHashTest {
+
+    private static BufferedImage image(int type, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, 0xff000000 | (x * 7919 + y * 104729));
+            }
+        }
+        return image;
+    }
+
+    @Test
+    public void samePixelsGiveSameHashForAllLayouts() {
+        BufferedImage rgb = image(BufferedImage.TYPE_INT_RGB, 20, 10);
+        BufferedImage argb = image(BufferedImage.TYPE_INT_ARGB, 20, 10);
+        BufferedImage bgr = image(BufferedImage.TYPE_3BYTE_BGR, 20, 10);
+        assertNotNull(ImageHash.plainPixels(rgb));
+        assertNull(ImageHash.plainPixels(bgr));
+        assertEquals(ImageHash.of(rgb), ImageHash.of(argb));
+        assertEquals(ImageHash.of(rgb), ImageHash.of(bgr));
+        assertArrayEquals(ImageHash.digest(rgb), ImageHash.digest(argb));
+        assertArrayEquals(ImageHash.digest(rgb), ImageHash.digest(bgr));
+    }
+
+    @Test
+    public void subimageIsHashedLikeItsCopy() {
+        BufferedImage frame = image(BufferedImage.TYPE_INT_RGB, 20, 10);
+        BufferedImage window = frame.getSubimage(5, 2, 8, 4);
+        BufferedImage copy = new BufferedImage(8, 4, BufferedImage.TYPE_INT_RGB);
+        copy.getGraphics().drawImage(window, 0, 0, null);
+        assertNull(ImageHash.plainPixels(window));
+        assertNotNull(ImageHash.plainPixels(copy));
+        assertEquals(ImageHash.of(copy), ImageHash.of(window));
+        assertArrayEquals(ImageHash.digest(copy), ImageHash.digest(window));
+    }
+
+    @Test
+    public void otherPixelsGiveOtherHash() {
+        BufferedImage first = image(BufferedImage.TYPE_INT_RGB, 20, 10);
+        BufferedImage second = image(BufferedImage.TYPE_INT_RGB, 20, 10);
+        second.setRGB(19, 9, 0);
+        assertNotEquals(ImageHash.of(first), ImageHash.of(second));
+        assertFalse(Arrays.equals(ImageHash.digest(first), ImageHash.digest(second)));
+    }
+
+    @Test
+    public void digestDependsOnDimensions() {
+        BufferedImage wide = new BufferedImage(4, 1, BufferedImage.TYPE_INT_RGB);
+        BufferedImage tall = new BufferedImage(1, 4, BufferedImage.TYPE_INT_RGB);
+        assertFalse(Arrays.equals(ImageHash.digest(wide), ImageHash.digest(tall)));
+    }
+
+    @Test
+    public void toStringContainsDimensions() {
+        BufferedImage image = image(BufferedImage.TYPE_INT_RGB, 20, 10);
+        assertEquals(String.format("20x10-%016x", ImageHash.of(image)), ImageHash.toString(image));
+    }
+}
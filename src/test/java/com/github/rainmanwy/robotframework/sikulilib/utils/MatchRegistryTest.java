@@ -0,0 +1,96 @@
+package com.github.rainmanwy.robotframework.sikulilib.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+import org.sikuli.script.Match;
+
+public class MatchRegistryTest {
+
+    private static Match match(int x) {
+        return new Match(x, 0, 20, 10, 0.95, null);
+    }
+
+    private static void assertUnknown(MatchRegistry registry, String handle) {
+        try {
+            registry.get(handle);
+            fail("Handle " + handle + " should be unknown");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains(handle));
+        }
+    }
+
+    @Test
+    public void handleReturnsStoredMatch() {
+        MatchRegistry registry = new MatchRegistry();
+        Match match = match(1);
+        String handle = registry.put(match);
+        assertTrue(MatchRegistry.isHandle(handle));
+        assertTrue(handle.matches("match:[0-9a-f]{16}"));
+        assertSame(match, registry.get(handle));
+        assertNotEquals(handle, registry.put(match));
+    }
+
+    @Test
+    public void handlesOfOtherRegistryAreUnknown() {
+        String handle = new MatchRegistry().put(match(1));
+        assertUnknown(new MatchRegistry(), handle);
+    }
+
+    @Test
+    public void leastRecentlyUsedHandleIsEvicted() {
+        MatchRegistry registry = new MatchRegistry();
+        registry.setLimits(2, 60000);
+        String first = registry.put(match(1));
+        String second = registry.put(match(2));
+        registry.get(first);
+        String third = registry.put(match(3));
+        assertUnknown(registry, second);
+        registry.get(first);
+        registry.get(third);
+        assertEquals(1L, registry.getStatistics().get("evicted"));
+        assertEquals(2, registry.getStatistics().get("handles"));
+    }
+
+    @Test
+    public void smallerCapacityEvictsImmediately() {
+        MatchRegistry registry = new MatchRegistry();
+        registry.put(match(1));
+        registry.put(match(2));
+        String last = registry.put(match(3));
+        registry.setLimits(1, 60000);
+        assertEquals(1, registry.getStatistics().get("handles"));
+        registry.get(last);
+    }
+
+    @Test
+    public void unusedHandleExpires() throws Exception {
+        MatchRegistry registry = new MatchRegistry();
+        registry.setLimits(10, 300);
+        String unused = registry.put(match(1));
+        String used = registry.put(match(2));
+        Thread.sleep(200);
+        registry.get(used);
+        Thread.sleep(200);
+        registry.get(used);
+        assertUnknown(registry, unused);
+        assertEquals(1L, registry.getStatistics().get("expired"));
+    }
+
+    @Test
+    public void releasedAndClearedHandlesAreUnknown() {
+        MatchRegistry registry = new MatchRegistry();
+        String released = registry.put(match(1));
+        String cleared = registry.put(match(2));
+        assertTrue(registry.release(released));
+        assertFalse(registry.release(released));
+        assertUnknown(registry, released);
+        registry.clear();
+        assertUnknown(registry, cleared);
+    }
+}
@@ -0,0 +1,51 @@
+package com.github.rainmanwy.robotframework.sikulilib.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.sikuli.script.OCR;
+
+/**
+ * Smoke test of pooled engines against SikuliX OCR, skipped where Tesseract is not installed.
+ */
+public class OcrEnginePoolTest {
+
+    private static BufferedImage text(String text) {
+        BufferedImage image = new BufferedImage(240, 60, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+        graphics.setColor(Color.BLACK);
+        graphics.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 28));
+        graphics.drawString(text, 10, 40);
+        graphics.dispose();
+        return image;
+    }
+
+    private static String sikuliText(BufferedImage image, OCR.Options options) {
+        try {
+            return OCR.readText(image, options.clone());
+        } catch (RuntimeException e) {
+            Assume.assumeNoException("SikuliX OCR is not available", e);
+        } catch (LinkageError e) {
+            Assume.assumeNoException("SikuliX OCR is not available", e);
+        }
+        return null;
+    }
+
+    @Test(timeout = 60000)
+    public void pooledReadGivesSikuliText() throws Exception {
+        BufferedImage image = text("Sikuli 42");
+        OCR.Options options = OcrEnginePool.options("eng");
+        String expected = sikuliText(image, options);
+        assertEquals(expected, OcrEnginePool.getInstance().readText(image, options));
+        // the engine is reused for the next read
+        assertEquals(expected, OcrEnginePool.getInstance().readText(image, options));
+    }
+}
@@ -0,0 +1,101 @@
+package com.github.rainmanwy.robotframework.sikulilib.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PatternCacheTest {
+
+    // decoded size of a 10 x 10 template
+    private static final long TEMPLATE_BYTES = 10 * 10 * 4;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final PatternCache cache = PatternCache.getInstance();
+
+    private File png(String name) throws Exception {
+        File file = folder.newFile(name);
+        ImageIO.write(new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB), "png", file);
+        return file;
+    }
+
+    @Before
+    public void emptyCache() {
+        cache.clear();
+        cache.resetStatistics();
+    }
+
+    @After
+    public void restoreCache() {
+        cache.setMaxBytes(64L * 1024 * 1024);
+        cache.clear();
+        cache.resetStatistics();
+    }
+
+    @Test
+    public void templateIsDecodedOnce() throws Exception {
+        File file = png("a.png");
+        BufferedImage template = cache.getTemplate(file);
+        assertSame(template, cache.getTemplate(file));
+        Map<String, Object> statistics = cache.getStatistics();
+        assertEquals(1L, statistics.get("hits"));
+        assertEquals(1L, statistics.get("misses"));
+        assertEquals(TEMPLATE_BYTES, statistics.get("bytes"));
+    }
+
+    @Test
+    public void modifiedFileIsDecodedAgain() throws Exception {
+        File file = png("a.png");
+        BufferedImage template = cache.getTemplate(file);
+        file.setLastModified(file.lastModified() - 10000);
+        assertNotSame(template, cache.getTemplate(file));
+    }
+
+    @Test
+    public void leastRecentlyUsedTemplateIsEvictedOverBudget() throws Exception {
+        cache.setMaxBytes(2 * TEMPLATE_BYTES);
+        File a = png("a.png");
+        File b = png("b.png");
+        File c = png("c.png");
+        BufferedImage templateA = cache.getTemplate(a);
+        BufferedImage templateB = cache.getTemplate(b);
+        cache.getTemplate(a);
+        cache.getTemplate(c);
+        Map<String, Object> statistics = cache.getStatistics();
+        assertEquals(1L, statistics.get("evictions"));
+        assertEquals(2, statistics.get("entries"));
+        assertEquals(2 * TEMPLATE_BYTES, statistics.get("bytes"));
+        assertSame(templateA, cache.getTemplate(a));
+        assertNotSame(templateB, cache.getTemplate(b));
+    }
+
+    @Test
+    public void smallerBudgetEvictsImmediately() throws Exception {
+        cache.getTemplate(png("a.png"));
+        cache.getTemplate(png("b.png"));
+        cache.setMaxBytes(TEMPLATE_BYTES);
+        assertEquals(1, cache.getStatistics().get("entries"));
+        assertEquals(TEMPLATE_BYTES, cache.getStatistics().get("bytes"));
+    }
+
+    @Test
+    public void undecodableFileIsNotCached() throws Exception {
+        File file = folder.newFile("broken.png");
+        assertNull(cache.getTemplate(file));
+        assertEquals(0, cache.getStatistics().get("entries"));
+    }
+}
@@ -0,0 +1,95 @@
+package com.github.rainmanwy.robotframework.sikulilib.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+
+import org.junit.Test;
+
+public class PreprocessingTest {
+
+    @Test
+    public void emptySpecIsNone() {
+        assertSame(Preprocessing.NONE, Preprocessing.parse(""));
+        assertSame(Preprocessing.NONE, Preprocessing.parse(" , "));
+        assertSame(Preprocessing.NONE, Preprocessing.parse("scale=1"));
+    }
+
+    @Test
+    public void stepsAreParsed() {
+        Preprocessing preprocessing = Preprocessing.parse(" grayscale , scale = 0.5, crop=10:0:40:20 ");
+        assertEquals("gray,scale=0.5,crop=10:0:40:20", preprocessing.toString());
+        assertEquals("gray,scale=0.5", preprocessing.frameKey());
+        assertEquals(0.5, preprocessing.getScale(), 0);
+        assertTrue(!preprocessing.isNone());
+    }
+
+    @Test
+    public void thresholdImpliesGray() {
+        assertEquals("gray,scale=1.0,threshold=128", Preprocessing.parse("threshold=128").toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownStepFails() {
+        Preprocessing.parse("gray,blur");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void stepWithoutValueFails() {
+        Preprocessing.parse("scale");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidNumberFails() {
+        Preprocessing.parse("scale=half");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void scaleAboveOneFails() {
+        Preprocessing.parse("scale=2");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void thresholdAbove255Fails() {
+        Preprocessing.parse("threshold=256");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void incompleteCropFails() {
+        Preprocessing.parse("crop=1:2:3");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyCropFails() {
+        Preprocessing.parse("crop=0:0:0:10");
+    }
+
+    @Test
+    public void frameIsScaledAndThresholded() {
+        BufferedImage frame = new BufferedImage(40, 20, BufferedImage.TYPE_INT_RGB);
+        for (int x = 20; x < 40; x++) {
+            for (int y = 0; y < 20; y++) {
+                frame.setRGB(x, y, 0xffffff);
+            }
+        }
+        BufferedImage result = Preprocessing.parse("scale=0.5,threshold=128").frame(frame);
+        assertEquals(BufferedImage.TYPE_BYTE_GRAY, result.getType());
+        assertEquals(20, result.getWidth());
+        assertEquals(10, result.getHeight());
+        assertEquals(0, result.getRaster().getSample(2, 5, 0));
+        assertEquals(255, result.getRaster().getSample(17, 5, 0));
+    }
+
+    @Test
+    public void templateIsCroppedBeforeConversion() {
+        BufferedImage template = new BufferedImage(40, 20, BufferedImage.TYPE_INT_RGB);
+        template.setRGB(10, 0, 0x123456);
+        BufferedImage result = Preprocessing.parse("crop=10:0:5:4").template(template);
+        assertEquals(BufferedImage.TYPE_3BYTE_BGR, result.getType());
+        assertEquals(5, result.getWidth());
+        assertEquals(4, result.getHeight());
+        assertEquals(0x123456, result.getRGB(0, 0) & 0xffffff);
+    }
+}
@@ -0,0 +1,68 @@
+package com.github.rainmanwy.robotframework.sikulilib.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sikuli.script.Match;
+import org.sikuli.script.Region;
+import org.sikuli.script.ScreenImage;
+
+public class ReplayScreenSourceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // a Match is a Region which can be created without a screen
+    private static final Region AREA = new Match(0, 0, 4, 4, 1.0, null);
+
+    private void png(File folder, String name, int rgb) throws Exception {
+        BufferedImage image = new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(1, 1, rgb);
+        ImageIO.write(image, "png", new File(folder, name));
+    }
+
+    private static int pixel(ScreenImage image) {
+        return image.getImage().getRGB(1, 1) & 0xffffff;
+    }
+
+    @Test
+    public void onlyCapturesStepFrames() throws Exception {
+        png(folder.getRoot(), "a.png", 0x0000aa);
+        png(folder.getRoot(), "b.png", 0x0000bb);
+        ReplayScreenSource source = new ReplayScreenSource(folder.getRoot().getPath(), 0);
+        assertFalse(source.performsInput());
+        assertEquals(0x0000aa, pixel(source.snapshot(null, AREA)));
+        assertEquals(0x0000aa, pixel(source.capture(null, AREA)));
+        assertEquals(0x0000aa, pixel(source.snapshot(null, AREA)));
+        assertEquals(0x0000aa, pixel(source.snapshot(null, AREA)));
+        assertEquals(0x0000bb, pixel(source.capture(null, AREA)));
+        assertEquals(0x0000bb, pixel(source.snapshot(null, AREA)));
+        // the last frame stays on screen
+        assertEquals(0x0000bb, pixel(source.capture(null, AREA)));
+    }
+
+    @Test
+    public void sessionFramesArePlacedAtTheirPosition() throws Exception {
+        png(folder.getRoot(), "frame-000000.png", 0x00cc00);
+        Writer writer = new FileWriter(new File(folder.getRoot(), ReplayScreenSource.SESSION_FILE));
+        try {
+            writer.write("0 frame-000000.png 2 1\n");
+        } finally {
+            writer.close();
+        }
+        ReplayScreenSource source = new ReplayScreenSource(folder.getRoot().getPath(), 0);
+        BufferedImage image = source.capture(null, AREA).getImage();
+        assertEquals(0x00cc00, image.getRGB(3, 2) & 0xffffff);
+        assertEquals(0, image.getRGB(1, 1) & 0xffffff);
+    }
+}
@@ -0,0 +1,114 @@
+package com.github.rainmanwy.robotframework.sikulilib.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sikuli.basics.Settings;
+
+public class SettingsSnapshotTest {
+
+    private float moveMouseDelay;
+
+    private static SettingsSnapshot withDelay(float moveMouseDelay) {
+        return new SettingsSnapshot(3.0, 0.7, 3f, moveMouseDelay, "eng", SettingsSnapshot.DEFAULT_CHANGE_THRESHOLD, 0);
+    }
+
+    @Before
+    public void saveDelay() {
+        moveMouseDelay = Settings.MoveMouseDelay;
+        Settings.MoveMouseDelay = 0.5f;
+    }
+
+    @After
+    public void restoreDelay() {
+        Settings.MoveMouseDelay = moveMouseDelay;
+    }
+
+    @Test
+    public void delayIsAppliedDuringInputOnly() {
+        SettingsSnapshot snapshot = withDelay(0.1f);
+        SettingsSnapshot previous = SettingsSnapshot.enter(snapshot);
+        try {
+            snapshot.beginInput();
+            try {
+                assertEquals(0.1f, Settings.MoveMouseDelay, 0);
+            } finally {
+                SettingsSnapshot.endInput();
+            }
+            assertEquals(0.5f, Settings.MoveMouseDelay, 0);
+        } finally {
+            SettingsSnapshot.leave(previous);
+        }
+    }
+
+    @Test
+    public void pyramidScaleIsKeptPerSnapshot() {
+        SettingsSnapshot snapshot = withDelay(0.1f);
+        SettingsSnapshot pyramid = snapshot.withPyramidScale(0.5f);
+        assertEquals(0f, snapshot.getPyramidScale(), 0);
+        assertEquals(0.5f, pyramid.getPyramidScale(), 0);
+        assertEquals(0.5f, pyramid.withTimeout(1.0).getPyramidScale(), 0);
+        assertEquals(0f, pyramid.withPyramidScale(1f).getPyramidScale(), 0);
+        assertEquals(0f, pyramid.withPyramidScale(-0.5f).getPyramidScale(), 0);
+    }
+
+    @Test(timeout = 10000)
+    public void inputLockIsNotHeldBetweenInputs() throws Exception {
+        final SettingsSnapshot snapshot = withDelay(0.1f);
+        SettingsSnapshot previous = SettingsSnapshot.enter(snapshot);
+        try {
+            snapshot.beginInput();
+            SettingsSnapshot.endInput();
+            // the keyword is still running, input of another thread is not blocked
+            final CountDownLatch done = new CountDownLatch(1);
+            Thread other = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    withDelay(0.2f).beginInput();
+                    SettingsSnapshot.endInput();
+                    done.countDown();
+                }
+            });
+            other.start();
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+        } finally {
+            SettingsSnapshot.leave(previous);
+        }
+        assertEquals(0.5f, Settings.MoveMouseDelay, 0);
+    }
+
+    @Test(timeout = 10000)
+    public void inputOfOtherThreadWaitsForRunningInput() throws Exception {
+        withDelay(0.1f).beginInput();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        final float[] seen = new float[1];
+        Thread other = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                withDelay(0.2f).beginInput();
+                seen[0] = Settings.MoveMouseDelay;
+                SettingsSnapshot.endInput();
+                done.countDown();
+            }
+        });
+        try {
+            other.start();
+            started.await();
+            assertTrue(!done.await(200, TimeUnit.MILLISECONDS));
+            assertEquals(0.1f, Settings.MoveMouseDelay, 0);
+        } finally {
+            SettingsSnapshot.endInput();
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(0.2f, seen[0], 0);
+        assertEquals(0.5f, Settings.MoveMouseDelay, 0);
+    }
+}
@@ -0,0 +1,78 @@
+package com.github.rainmanwy.robotframework.sikulilib.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TileChangeDetectorTest {
+
+    private static BufferedImage frame(int width, int height) {
+        return new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    }
+
+    @Test
+    public void firstFrameIsNotComparable() {
+        assertNull(new TileChangeDetector().update(frame(100, 80)));
+    }
+
+    @Test
+    public void unchangedFrameGivesNoArea() {
+        TileChangeDetector detector = new TileChangeDetector(10);
+        detector.update(frame(100, 80));
+        assertTrue(detector.update(frame(100, 80)).isEmpty());
+    }
+
+    @Test
+    public void adjacentTilesAreMerged() {
+        TileChangeDetector detector = new TileChangeDetector(10);
+        detector.update(frame(100, 80));
+        BufferedImage changed = frame(100, 80);
+        changed.setRGB(15, 12, 0xffffff);
+        changed.setRGB(25, 12, 0xffffff);
+        // diagonal neighbour
+        changed.setRGB(35, 25, 0xffffff);
+        assertEquals(Arrays.asList(new Rectangle(10, 10, 30, 20)), detector.update(changed));
+        // compared with the previous frame, not the first one
+        assertTrue(detector.update(changed).isEmpty());
+    }
+
+    @Test
+    public void separateChangesGiveSeparateAreas() {
+        TileChangeDetector detector = new TileChangeDetector(10);
+        detector.update(frame(100, 80));
+        BufferedImage changed = frame(100, 80);
+        changed.setRGB(5, 5, 0xffffff);
+        changed.setRGB(91, 73, 0xffffff);
+        List<Rectangle> dirty = detector.update(changed);
+        assertEquals(Arrays.asList(new Rectangle(0, 0, 10, 10), new Rectangle(90, 70, 10, 10)), dirty);
+        assertTrue(TileChangeDetector.intersects(dirty, new Rectangle(85, 65, 10, 10)));
+        assertFalse(TileChangeDetector.intersects(dirty, new Rectangle(40, 30, 20, 20)));
+    }
+
+    @Test
+    public void partialTilesAreClippedToFrame() {
+        TileChangeDetector detector = new TileChangeDetector(32);
+        detector.update(frame(50, 40));
+        BufferedImage changed = frame(50, 40);
+        changed.setRGB(49, 39, 0xffffff);
+        assertEquals(Arrays.asList(new Rectangle(32, 32, 18, 8)), detector.update(changed));
+    }
+
+    @Test
+    public void resizedOrResetFrameIsNotComparable() {
+        TileChangeDetector detector = new TileChangeDetector(10);
+        detector.update(frame(100, 80));
+        assertNull(detector.update(frame(100, 90)));
+        detector.reset();
+        assertNull(detector.update(frame(100, 90)));
+        assertTrue(detector.update(frame(100, 90)).isEmpty());
+    }
+}
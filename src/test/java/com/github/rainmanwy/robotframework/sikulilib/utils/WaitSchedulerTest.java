@@ -0,0 +1,69 @@
+package com.github.rainmanwy.robotframework.sikulilib.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class WaitSchedulerTest {
+
+    private static void poll(WaitScheduler scheduler, boolean changed) {
+        scheduler.beginPoll();
+        scheduler.endPoll(changed);
+    }
+
+    @Test
+    public void intervalBacksOffUpToScanRate() {
+        WaitScheduler scheduler = new WaitScheduler("test", 60, 5);
+        assertEquals(WaitScheduler.FAST_INTERVAL, scheduler.nextSleep());
+        poll(scheduler, false);
+        assertEquals(40, scheduler.nextSleep());
+        poll(scheduler, false);
+        assertEquals(80, scheduler.nextSleep());
+        poll(scheduler, false);
+        assertEquals(160, scheduler.nextSleep());
+        poll(scheduler, false);
+        assertEquals(200, scheduler.nextSleep());
+        poll(scheduler, false);
+        assertEquals(200, scheduler.nextSleep());
+    }
+
+    @Test
+    public void changeResetsInterval() {
+        WaitScheduler scheduler = new WaitScheduler("test", 60, 1);
+        poll(scheduler, false);
+        poll(scheduler, false);
+        assertEquals(80, scheduler.nextSleep());
+        poll(scheduler, true);
+        assertEquals(WaitScheduler.FAST_INTERVAL, scheduler.nextSleep());
+    }
+
+    @Test
+    public void sleepIsNotShorterThanPoll() throws Exception {
+        WaitScheduler scheduler = new WaitScheduler("test", 60, 1);
+        scheduler.beginPoll();
+        Thread.sleep(100);
+        scheduler.endPoll(true);
+        assertTrue(scheduler.nextSleep() >= 100);
+    }
+
+    @Test
+    public void sleepIsCutAtDeadline() throws Exception {
+        WaitScheduler scheduler = new WaitScheduler("test", 0.05, 0.1);
+        for (int i = 0; i < 10; i++) {
+            poll(scheduler, false);
+        }
+        assertTrue(scheduler.nextSleep() <= 50);
+        assertTrue(scheduler.sleep());
+        assertTrue(scheduler.isExpired());
+        assertFalse(scheduler.sleep());
+    }
+
+    @Test
+    public void zeroTimeoutPollsOnce() throws Exception {
+        WaitScheduler scheduler = new WaitScheduler("test", 0, 1);
+        poll(scheduler, false);
+        assertFalse(scheduler.sleep());
+    }
+}